@@ -58,6 +58,14 @@ class Alphabet {
         return r;
     }
 
+    /**
+     * Returns the index of character CH, or -1 if CH is not in the
+     * alphabet.
+     */
+    int indexOf(char ch) {
+        return _chars.indexOf(ch);
+    }
+
     /**
      * Returns the index of character CH which must be in
      * the alphabet. This is the inverse of toChar().
@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The best-scoring keys seen in a key search, at most a fixed number of
+ * them.  Higher scores are better; of keys with equal scores, the
+ * smaller key ranks first, so that merging the candidates of several
+ * searches gives the same result whatever their order.  The candidates
+ * have a textual form, "KEY:SCORE" items separated by blanks, in which
+ * workers report them and checkpoints record them.
+ *
+ * @author taiga
+ */
+class Candidates {
+
+    /**
+     * An empty set of at most CAPACITY candidates.
+     */
+    Candidates(int capacity) {
+        if (capacity <= 0) {
+            throw error("bad number of candidates %d", capacity);
+        }
+        _capacity = capacity;
+        _heap = new PriorityQueue<>(capacity + 1, WORST_FIRST);
+    }
+
+    /**
+     * Return the candidates of capacity CAPACITY in TEXT, in the form
+     * produced by toString().
+     */
+    static Candidates parse(String text, int capacity) {
+        Candidates result = new Candidates(capacity);
+        for (String item : text.trim().split("\\s+")) {
+            if (item.isEmpty()) {
+                continue;
+            }
+            int colon = item.indexOf(':');
+            try {
+                result.offer(Long.parseLong(item.substring(0, colon)),
+                             Double.parseDouble(item.substring(colon + 1)));
+            } catch (NumberFormatException
+                     | StringIndexOutOfBoundsException excp) {
+                throw error("bad candidate %s", item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Consider KEY, whose score is SCORE.
+     */
+    void offer(long key, double score) {
+        if (_heap.size() == _capacity) {
+            Candidate worst = _heap.peek();
+            if (score < worst.score()
+                || score == worst.score() && key >= worst.key()) {
+                return;
+            }
+            _heap.poll();
+        }
+        _heap.add(new Candidate(key, score));
+    }
+
+    /**
+     * Consider all of OTHER's candidates.
+     */
+    void addAll(Candidates other) {
+        for (Candidate c : other._heap) {
+            offer(c.key(), c.score());
+        }
+    }
+
+    /**
+     * Return the number of candidates.
+     */
+    int size() {
+        return _heap.size();
+    }
+
+    /**
+     * Return the candidates, best first.
+     */
+    List<Candidate> ranked() {
+        List<Candidate> result = new ArrayList<>(_heap);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Candidate c : ranked()) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(c.key()).append(':').append(c.score());
+        }
+        return result.toString();
+    }
+
+    /**
+     * A key and its score.
+     */
+    static class Candidate {
+
+        /**
+         * KEY, scoring SCORE.
+         */
+        Candidate(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /**
+         * Return my key.
+         */
+        long key() {
+            return _key;
+        }
+
+        /**
+         * Return my score.
+         */
+        double score() {
+            return _score;
+        }
+
+        /**
+         * The key.
+         */
+        private final long _key;
+        /**
+         * Its score.
+         */
+        private final double _score;
+    }
+
+    /**
+     * Orders candidates from worst to best.
+     */
+    private static final Comparator<Candidate> WORST_FIRST =
+        Comparator.comparingDouble(Candidate::score)
+        .thenComparing(Comparator.comparingLong(Candidate::key).reversed());
+
+    /**
+     * Largest number of candidates kept.
+     */
+    private final int _capacity;
+    /**
+     * The candidates, worst at the head.
+     */
+    private final PriorityQueue<Candidate> _heap;
+}
@@ -0,0 +1,402 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.stream.IntStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A catalog, in the manner of Rejewski's, of the cycle structures of a
+ * machine.  For each rotor order and each position of the moving rotors
+ * (other rotors at their first position, no ring settings), let A1 .. A6
+ * be the permutations the machine performs on the six characters
+ * following that position.  The "characteristic" of the entry is the
+ * cycle type of the products A1A4, A2A5 and A3A6.  A plugboard only
+ * conjugates these products, so the characteristic does not depend on
+ * it, and the characteristic observed in a day's doubled message-key
+ * indicators selects the few entries that could have produced them.
+ * <p>
+ * Entries are numbered order * positions() + position, the leftmost
+ * moving rotor being the most significant digit of a position.  The
+ * on-disk index (see CatalogIndex) is the sorted array of longs whose
+ * upper half is a hash of the characteristic and lower half the entry
+ * number.
+ *
+ * @author taiga
+ */
+class Catalog {
+
+    /**
+     * Generate a catalog for the configuration named by ARGS[0] into the
+     * index file ARGS[1], or, with --query, look up in the index
+     * ARGS[1] the doubled indicators read from the file ARGS[2] (or the
+     * standard input) and print the matching settings.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--query --=(.*){2,3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Catalog [--query] CONFIG "
+                            + "INDEX [INDICATORS]");
+            }
+            List<String> files = options.get("--");
+            Catalog catalog = new Catalog(Main.loadConfig(files.get(0)));
+            File index = new File(files.get(1));
+            if (options.contains("--query")) {
+                Scanner input;
+                if (files.size() > 2) {
+                    input = new Scanner(new File(files.get(2)));
+                } else {
+                    input = new Scanner(System.in);
+                }
+                CatalogIndex idx = new CatalogIndex(index);
+                for (int entry : catalog.query(idx, input)) {
+                    System.out.println(catalog.setting(entry));
+                }
+            } else {
+                catalog.write(index, catalog.generate());
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A catalog of the rotor orders of MACHINE.
+     */
+    Catalog(Machine machine) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numPawls = machine.numPawls();
+        _orders = new RotorOrders(machine);
+        _wiring = new Wiring(_orders.rotors());
+        _stepping = new Stepping[_orders.size()];
+        for (int o = 0; o < _stepping.length; o += 1) {
+            _stepping[o] = new Stepping(_alphabet, _orders.slots(o));
+        }
+        long positions = 1;
+        for (int k = 0; k < _numPawls; k += 1) {
+            positions *= _size;
+        }
+        if (positions * _orders.size() > Integer.MAX_VALUE) {
+            throw error("catalog too large");
+        }
+        _positions = (int) positions;
+    }
+
+    /**
+     * Return the rotor orders cataloged.
+     */
+    RotorOrders orders() {
+        return _orders;
+    }
+
+    /**
+     * Return the number of positions cataloged per rotor order.
+     */
+    int positions() {
+        return _positions;
+    }
+
+    /**
+     * Return the number of entries in the catalog.
+     */
+    int entries() {
+        return _orders.size() * _positions;
+    }
+
+    /**
+     * Return the length of a characteristic as filled in by
+     * characteristic().
+     */
+    int characteristicLength() {
+        return PRODUCTS * (_size + 1);
+    }
+
+    /**
+     * Store into COUNTS the characteristic of entry ENTRY: for each of
+     * the three products, the number of its cycles of each length.
+     */
+    void characteristic(int entry, int[] counts) {
+        new Worker().characteristic(entry, counts);
+    }
+
+    /**
+     * Return the hash of the characteristic COUNTS used as index key.
+     */
+    static int key(int[] counts) {
+        long h = 1;
+        for (int c : counts) {
+            h = h * HASH_MULTIPLIER + c;
+        }
+        return (int) (h ^ (h >>> Integer.SIZE));
+    }
+
+    /**
+     * Return the catalog as a sorted array of keyed entries, computed in
+     * parallel over rotor orders.
+     */
+    long[] generate() {
+        long[] result = new long[entries()];
+        IntStream.range(0, _orders.size()).parallel().forEach(o -> {
+            Worker worker = new Worker();
+            int[] counts = new int[characteristicLength()];
+            for (int p = 0; p < _positions; p += 1) {
+                int entry = o * _positions + p;
+                worker.characteristic(entry, counts);
+                result[entry] = ((long) key(counts) << Integer.SIZE)
+                    | entry;
+            }
+        });
+        Arrays.parallelSort(result);
+        return result;
+    }
+
+    /**
+     * Write the sorted keyed ENTRIES to the index file named FILE.
+     */
+    void write(File file, long[] entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(_size);
+        header.writeInt(_orders.get(0).length);
+        header.writeInt(_numPawls);
+        header.writeInt(_orders.size());
+        for (int o = 0; o < _orders.size(); o += 1) {
+            for (String name : _orders.names(o)) {
+                header.writeUTF(name);
+            }
+        }
+        header.flush();
+        int headerLength = CatalogIndex.PREFIX + bytes.size();
+        headerLength += (Long.BYTES - headerLength % Long.BYTES) % Long.BYTES;
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+            ByteBuffer buf =
+                ByteBuffer.allocate(Math.max(BUFFER_SIZE, headerLength));
+            buf.putInt(CatalogIndex.MAGIC).putInt(headerLength)
+                .put(bytes.toByteArray());
+            while (buf.position() < headerLength) {
+                buf.put((byte) 0);
+            }
+            for (long entry : entries) {
+                if (!buf.hasRemaining()) {
+                    drain(buf, channel);
+                }
+                buf.putLong(entry);
+            }
+            drain(buf, channel);
+        }
+    }
+
+    /**
+     * Write the contents of BUF to CHANNEL and clear it.
+     */
+    private static void drain(ByteBuffer buf, FileChannel channel)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Check that INDEX was written for my configuration: the same
+     * alphabet size, number of pawls and rotor orders, each with the
+     * same rotor names.  Entry numbers of any other index would name
+     * the wrong settings.
+     */
+    void check(CatalogIndex index) {
+        boolean same = index.size() == _size
+            && index.numPawls() == _numPawls
+            && index.orders() == _orders.size();
+        for (int o = 0; same && o < _orders.size(); o += 1) {
+            same = Arrays.equals(index.names(o), _orders.names(o));
+        }
+        if (!same) {
+            throw error("index is the catalog of another configuration");
+        }
+    }
+
+    /**
+     * Return the entries of INDEX, which must have been written for my
+     * configuration, whose characteristic is that of the doubled
+     * message-key indicators read from INPUT.  Each indicator is a
+     * group of six letters; other characters are ignored.
+     */
+    List<Integer> query(CatalogIndex index, Scanner input) {
+        check(index);
+        int[][] products = new int[PRODUCTS][_size];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        while (input.hasNext()) {
+            String group = input.next();
+            if (group.length() != 2 * PRODUCTS) {
+                throw error("indicator %s is not %d letters", group,
+                            2 * PRODUCTS);
+            }
+            for (int i = 0; i < PRODUCTS; i += 1) {
+                int from = _alphabet.toInt(group.charAt(i));
+                int to = _alphabet.toInt(group.charAt(i + PRODUCTS));
+                if (products[i][from] >= 0 && products[i][from] != to) {
+                    throw error("inconsistent indicator %s", group);
+                }
+                products[i][from] = to;
+            }
+        }
+        int[] counts = new int[characteristicLength()];
+        boolean[] seen = new boolean[_size];
+        for (int i = 0; i < PRODUCTS; i += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                if (products[i][c] < 0) {
+                    throw error("indicators do not determine all cycles");
+                }
+            }
+            Permutation.cycleType(products[i], seen, counts,
+                                  i * (_size + 1));
+        }
+
+        List<Integer> result = new ArrayList<>();
+        int[] found = new int[counts.length];
+        Worker worker = new Worker();
+        for (int entry : index.lookup(key(counts))) {
+            worker.characteristic(entry, found);
+            if (Arrays.equals(found, counts)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the setting line (without ring settings or plugboard)
+     * corresponding to entry ENTRY.
+     */
+    String setting(int entry) {
+        int order = entry / _positions;
+        int position = entry % _positions;
+        String[] names = _orders.names(order);
+        char[] letters = new char[names.length - 1];
+        for (int k = letters.length - 1; k >= 0; k -= 1) {
+            if (k >= letters.length - _numPawls) {
+                letters[k] = _alphabet.toChar(position % _size);
+                position /= _size;
+            } else {
+                letters[k] = _alphabet.toChar(0);
+            }
+        }
+        return "* " + String.join(" ", names) + " " + new String(letters);
+    }
+
+    /**
+     * Scratch space for computing characteristics on one thread.
+     */
+    private class Worker {
+
+        /**
+         * Store into COUNTS the characteristic of entry ENTRY.
+         */
+        void characteristic(int entry, int[] counts) {
+            int order = entry / _positions;
+            int position = entry % _positions;
+            int[] slots = _orders.get(order);
+            int n = slots.length;
+            Arrays.fill(_pos, 0);
+            for (int k = n - 1; k >= n - _numPawls; k -= 1) {
+                _pos[k] = position % _size;
+                position /= _size;
+            }
+            for (int i = 0; i < 2 * PRODUCTS; i += 1) {
+                _stepping[order].step(_pos);
+                _wiring.permutation(slots, _pos, _perms[i]);
+            }
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < PRODUCTS; i += 1) {
+                Permutation.compose(_perms[i], _perms[i + PRODUCTS],
+                                    _product);
+                Permutation.cycleType(_product, _seen, counts,
+                                      i * (_size + 1));
+            }
+        }
+
+        /**
+         * Rotor positions.
+         */
+        private final int[] _pos = new int[_orders.get(0).length];
+        /**
+         * The permutations A1 .. A6.
+         */
+        private final int[][] _perms = new int[2 * PRODUCTS][_size];
+        /**
+         * A product of two of _perms.
+         */
+        private final int[] _product = new int[_size];
+        /**
+         * Marks for cycle decomposition.
+         */
+        private final boolean[] _seen = new boolean[_size];
+    }
+
+    /**
+     * Number of permutation products in a characteristic.
+     */
+    private static final int PRODUCTS = 3;
+    /**
+     * Multiplier for characteristic hashes.
+     */
+    private static final long HASH_MULTIPLIER = 1000003;
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Alphabet of the machine.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * # of pawls.
+     */
+    private final int _numPawls;
+    /**
+     * Rotor orders cataloged.
+     */
+    private final RotorOrders _orders;
+    /**
+     * Wirings of all rotors.
+     */
+    private final Wiring _wiring;
+    /**
+     * Stepping rules of each rotor order.
+     */
+    private final Stepping[] _stepping;
+    /**
+     * # positions per rotor order.
+     */
+    private final int _positions;
+}
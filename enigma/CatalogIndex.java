@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A memory-mapped Catalog index file, searched by binary search on the
+ * characteristic hash.  The file holds the magic number, the length of
+ * the header, the alphabet size, number of rotor slots, number of pawls,
+ * number of rotor orders and the names of the rotors of each order,
+ * followed, from the end of the header, by the sorted keyed entries.
+ *
+ * @author taiga
+ */
+class CatalogIndex {
+
+    /**
+     * Magic number at the start of an index file.
+     */
+    static final int MAGIC = 0x454e5243;
+    /**
+     * Length of the magic number and header length fields.
+     */
+    static final int PREFIX = 2 * Integer.BYTES;
+
+    /**
+     * The index in FILE.
+     */
+    CatalogIndex(File file) throws IOException {
+        int headerLength;
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a catalog index", file);
+            }
+            headerLength = in.readInt();
+            _size = in.readInt();
+            int numRotors = in.readInt();
+            _numPawls = in.readInt();
+            _names = new String[in.readInt()][numRotors];
+            for (String[] order : _names) {
+                for (int k = 0; k < numRotors; k += 1) {
+                    order[k] = in.readUTF();
+                }
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _length = (channel.size() - headerLength) / Long.BYTES;
+            int segments = (int) ((_length + SEGMENT - 1) / SEGMENT);
+            _segments = new LongBuffer[segments];
+            for (int s = 0; s < segments; s += 1) {
+                long first = (long) s * SEGMENT;
+                long count = Math.min(SEGMENT, _length - first);
+                _segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                           headerLength + first * Long.BYTES,
+                                           count * Long.BYTES)
+                    .asLongBuffer();
+            }
+        }
+    }
+
+    /**
+     * Return the number of entries in the index.
+     */
+    long length() {
+        return _length;
+    }
+
+    /**
+     * Return the alphabet size of the cataloged machine.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the number of pawls of the cataloged machine.
+     */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /**
+     * Return the names of the rotors of rotor order #I.
+     */
+    String[] names(int i) {
+        return _names[i];
+    }
+
+    /**
+     * Return the number of rotor orders.
+     */
+    int orders() {
+        return _names.length;
+    }
+
+    /**
+     * Return keyed entry #I.
+     */
+    long get(long i) {
+        return _segments[(int) (i / SEGMENT)].get((int) (i % SEGMENT));
+    }
+
+    /**
+     * Return the entry numbers whose characteristic hashes to KEY.
+     */
+    int[] lookup(int key) {
+        long target = (long) key << Integer.SIZE;
+        long lo = 0, hi = _length;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (get(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int[] result = new int[INITIAL_RESULTS];
+        int n = 0;
+        for (long i = lo; i < _length && (int) (get(i) >> Integer.SIZE) == key;
+             i += 1) {
+            if (n == result.length) {
+                result = Arrays.copyOf(result, 2 * n);
+            }
+            result[n] = (int) get(i);
+            n += 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Entries per mapped segment.
+     */
+    private static final long SEGMENT = 1L << 27;
+    /**
+     * Initial capacity of lookup results.
+     */
+    private static final int INITIAL_RESULTS = 16;
+
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * # of pawls.
+     */
+    private final int _numPawls;
+    /**
+     * Rotor names of each order.
+     */
+    private final String[][] _names;
+    /**
+     * # entries.
+     */
+    private final long _length;
+    /**
+     * Mapped entries.
+     */
+    private final LongBuffer[] _segments;
+}
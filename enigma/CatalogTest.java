@@ -0,0 +1,120 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Catalog class.
+ *
+ * @author taiga
+ */
+public class CatalogTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a three-rotor machine with rotors I, II, III and
+     * reflector B.
+     */
+    private Machine machine() {
+        return navalMachine(4, 3, "I", "II", "III", "B");
+    }
+
+    /**
+     * Return the permutations performed by MACH on its next six
+     * characters, from the setting SETTING.
+     */
+    private int[][] sixPermutations(Machine mach, String setting) {
+        int[][] result = new int[6][UPPER.size()];
+        for (int c = 0; c < UPPER.size(); c += 1) {
+            mach.setRotors(setting, "");
+            for (int i = 0; i < 6; i += 1) {
+                result[i][c] = mach.convert(c);
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrders() {
+        Catalog catalog = new Catalog(machine());
+        assertEquals(6, catalog.orders().size());
+        assertEquals(26 * 26 * 26, catalog.positions());
+    }
+
+    @Test
+    public void testCharacteristicIgnoresPlugboard() {
+        Machine mach = machine();
+        Catalog catalog = new Catalog(mach);
+        int order = -1;
+        for (int o = 0; o < catalog.orders().size(); o += 1) {
+            if (String.join(" ", catalog.orders().names(o))
+                .equals("B II I III")) {
+                order = o;
+            }
+        }
+        int entry = order * catalog.positions()
+            + UPPER.toInt('K') * 26 * 26 + UPPER.toInt('Q') * 26
+            + UPPER.toInt('Z');
+        assertEquals("* B II I III KQZ", catalog.setting(entry));
+
+        mach.insertRotors(new String[] {"B", "II", "I", "III"});
+        mach.setPlugboard(new Permutation("(AT) (GH) (LP) (MX)", UPPER));
+        int[][] perms = sixPermutations(mach, "KQZ");
+        int[] expected = new int[catalog.characteristicLength()];
+        int[] product = new int[UPPER.size()];
+        boolean[] seen = new boolean[UPPER.size()];
+        for (int i = 0; i < 3; i += 1) {
+            for (int c = 0; c < UPPER.size(); c += 1) {
+                product[c] = perms[i + 3][perms[i][c]];
+            }
+            Permutation.cycleType(product, seen, expected, i * 27);
+        }
+        int[] counts = new int[catalog.characteristicLength()];
+        catalog.characteristic(entry, counts);
+        assertArrayEquals(expected, counts);
+    }
+
+    @Test
+    public void testCheckIndex() throws IOException {
+        File file = File.createTempFile("catalog", ".idx");
+        try {
+            Catalog catalog = new Catalog(machine());
+            catalog.write(file, new long[0]);
+            CatalogIndex index = new CatalogIndex(file);
+            catalog.check(index);
+            Catalog[] others = {
+                new Catalog(navalMachine(4, 3, "I", "II", "IV", "B")),
+                new Catalog(navalMachine(4, 2, "Beta", "II", "III", "B")),
+                new Catalog(navalMachine(4, 3, "I", "II", "III", "IV",
+                                         "B"))
+            };
+            for (Catalog other : others) {
+                try {
+                    other.check(index);
+                    fail("index of another configuration accepted");
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A corpus of ciphertexts searched for pairs "in depth": enciphered
+ * from overlapping stretches of machine states, so that where they
+ * overlap the two texts coincide letter for letter as often as plaintext
+ * does (kappa about 0.066 for German) rather than as often as random
+ * text does (1/26).  Every pair of messages is compared at every
+ * relative offset giving at least a minimum overlap, and the pairs and
+ * offsets with the most excess coincidences are reported.
+ * <p>
+ * Comparisons are bit-parallel.  Each message is kept bit-sliced: bit i
+ * of plane p holds bit p of the alphabet index of its character i, and
+ * a last plane marks the positions holding characters.  Two 64-character
+ * stretches are compared with one XOR per plane and one bit count, so
+ * counting the coincidences at one offset costs about 1/64 of a
+ * character-by-character comparison per plane.  Pairs are spread over
+ * threads by a parallel stream.
+ *
+ * @author taiga
+ */
+public final class Depths {
+
+    /**
+     * Print the depths found in the corpus ARGS[1], one message per
+     * line, enciphered on the machine whose configuration is named by
+     * ARGS[0].  Characters of a message not in the machine's alphabet
+     * are ignored.  Options: --min-overlap=N (default 20), --max-shift=N
+     * (default unlimited), and --top=N, the number of depths printed
+     * (default 20).  Each line printed gives the excess coincidences in
+     * standard deviations, the coincidences and overlap, the numbers of
+     * the two messages (from 1) and the offset of the second in the
+     * first.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--min-overlap=(\\d+) --max-shift=(\\d+) "
+                                + "--top=(\\d+) --=(.*){2,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Depths [--min-overlap=N] "
+                            + "[--max-shift=N] [--top=N] CONFIG CORPUS");
+            }
+            List<String> files = options.get("--");
+            Depths corpus =
+                new Depths(Main.loadConfig(files.get(0)).alphabet());
+            for (String line
+                     : Files.readAllLines(Paths.get(files.get(1)),
+                                          StandardCharsets.ISO_8859_1)) {
+                if (!line.trim().isEmpty()) {
+                    corpus.add(line);
+                }
+            }
+            List<Depth> found =
+                corpus.search(option(options, "--min-overlap",
+                                     DEFAULT_MIN_OVERLAP),
+                              option(options, "--max-shift",
+                                     Integer.MAX_VALUE),
+                              option(options, "--top", DEFAULT_TOP));
+            for (Depth d : found) {
+                System.out.printf("%8.2f %6d/%-6d %6d %6d %+6d%n",
+                                  d.excess(), d.coincidences(),
+                                  d.overlap(), d.first() + 1,
+                                  d.second() + 1, d.shift());
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the value of integer option NAME in OPTIONS, or DEFLT.
+     */
+    private static int option(CommandArgs options, String name, int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        try {
+            return Integer.parseInt(options.getLast(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /**
+     * An empty corpus of texts in ALPHABET.
+     */
+    Depths(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _planes = Math.max(1, Integer.SIZE
+                           - Integer.numberOfLeadingZeros(
+                               alphabet.size() - 1));
+        _frequencies = new long[alphabet.size()];
+    }
+
+    /**
+     * Add TEXT to the corpus, ignoring its characters not in my
+     * alphabet, and return its number (from 0).
+     */
+    int add(String text) {
+        int[] chars = new int[text.length()];
+        int length = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = _alphabet.indexOf(text.charAt(i));
+            if (c >= 0) {
+                chars[length] = c;
+                length += 1;
+            }
+        }
+        int words = (length + WORD - 1) / WORD;
+        long[] bits = new long[(_planes + 1) * words];
+        for (int i = 0; i < length; i += 1) {
+            int c = chars[i];
+            long bit = 1L << (i % WORD);
+            for (int p = 0; p < _planes; p += 1) {
+                if ((c >>> p & 1) != 0) {
+                    bits[p * words + i / WORD] |= bit;
+                }
+            }
+            bits[_planes * words + i / WORD] |= bit;
+            _frequencies[c] += 1;
+        }
+        _texts.add(bits);
+        _lengths.add(length);
+        _total += length;
+        return _texts.size() - 1;
+    }
+
+    /**
+     * Return the number of texts.
+     */
+    int size() {
+        return _texts.size();
+    }
+
+    /**
+     * Return the length of text #T, counting only its characters in my
+     * alphabet.
+     */
+    int length(int t) {
+        return _lengths.get(t);
+    }
+
+    /**
+     * Return the probability that two characters drawn at random from
+     * the corpus are equal, the expected rate of coincidence of texts
+     * not in depth.
+     */
+    double kappa() {
+        if (_total == 0) {
+            return 1.0 / _alphabet.size();
+        }
+        double result = 0;
+        for (long f : _frequencies) {
+            double p = (double) f / _total;
+            result += p * p;
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of positions i at which character i + SHIFT of
+     * text #A equals character i of text #B.
+     */
+    int coincidences(int a, int b, int shift) {
+        if (shift < 0) {
+            return coincidences(b, a, -shift);
+        }
+        long[] x = _texts.get(a), y = _texts.get(b);
+        int xWords = x.length / (_planes + 1);
+        int yWords = y.length / (_planes + 1);
+        int result = 0;
+        for (int w = 0; w < yWords; w += 1) {
+            int bit = w * WORD + shift;
+            long eq = y[_planes * yWords + w]
+                & bits(x, _planes * xWords, xWords, bit);
+            for (int p = 0; p < _planes && eq != 0; p += 1) {
+                eq &= ~(y[p * yWords + w] ^ bits(x, p * xWords, xWords, bit));
+            }
+            result += Long.bitCount(eq);
+        }
+        return result;
+    }
+
+    /**
+     * Return the WORD bits starting at bit BIT of the plane of WORDS
+     * words starting at BASE in BITS, padded with zeros.
+     */
+    private static long bits(long[] bits, int base, int words, int bit) {
+        int q = bit >>> LOG_WORD, r = bit & (WORD - 1);
+        if (q >= words) {
+            return 0;
+        }
+        long lo = bits[base + q];
+        if (r == 0) {
+            return lo;
+        }
+        long hi = q + 1 < words ? bits[base + q + 1] : 0;
+        return lo >>> r | hi << (WORD - r);
+    }
+
+    /**
+     * Return the TOP candidate depths, best first, among all pairs of
+     * texts at offsets giving an overlap of at least MINOVERLAP and
+     * shifting one text by at most MAXSHIFT against the other.
+     */
+    List<Depth> search(int minOverlap, int maxShift, int top) {
+        if (top <= 0 || minOverlap <= 0) {
+            throw error("bad search parameters");
+        }
+        double kappa = kappa();
+        List<Depth> result =
+            IntStream.range(0, size()).parallel()
+            .mapToObj(a -> search(a, minOverlap, maxShift, top, kappa))
+            .reduce(new ArrayList<>(), (x, y) -> best(x, y, top));
+        return result;
+    }
+
+    /**
+     * Return the TOP best depths pairing text #A with the texts after
+     * it, as for search(MINOVERLAP, MAXSHIFT, TOP), where KAPPA is the
+     * rate of coincidence of texts not in depth.
+     */
+    private List<Depth> search(int a, int minOverlap, int maxShift,
+                               int top, double kappa) {
+        PriorityQueue<Depth> best = new PriorityQueue<>(top + 1, WORST_FIRST);
+        int lengthA = length(a);
+        for (int b = a + 1; b < size(); b += 1) {
+            int lengthB = length(b);
+            int from = Math.max(minOverlap - lengthB, -maxShift);
+            int to = Math.min(lengthA - minOverlap, maxShift);
+            for (int shift = from; shift <= to; shift += 1) {
+                int overlap = Math.min(lengthA - Math.max(shift, 0),
+                                       lengthB + Math.min(shift, 0));
+                if (overlap < minOverlap) {
+                    continue;
+                }
+                int count = coincidences(a, b, shift);
+                double mean = overlap * kappa;
+                double excess = (count - mean)
+                    / Math.sqrt(Math.max(mean * (1 - kappa), MIN_VARIANCE));
+                if (best.size() < top
+                    || excess > best.peek().excess()) {
+                    best.add(new Depth(a, b, shift, overlap, count, excess));
+                    if (best.size() > top) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(best);
+    }
+
+    /**
+     * Return the TOP best of the depths in X and Y, best first.
+     */
+    private static List<Depth> best(List<Depth> x, List<Depth> y, int top) {
+        List<Depth> result = new ArrayList<>(x);
+        result.addAll(y);
+        result.sort(WORST_FIRST.reversed());
+        return new ArrayList<>(result.subList(0,
+                                              Math.min(top, result.size())));
+    }
+
+    /**
+     * A pair of texts at an offset, and how many coincidences they show
+     * there.
+     */
+    static class Depth {
+
+        /**
+         * Texts #FIRST and #SECOND, character i + SHIFT of the first
+         * aligned with character i of the second, overlapping in OVERLAP
+         * characters of which COINCIDENCES coincide, EXCESS standard
+         * deviations above what texts not in depth would show.
+         */
+        Depth(int first, int second, int shift, int overlap,
+              int coincidences, double excess) {
+            _first = first;
+            _second = second;
+            _shift = shift;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _excess = excess;
+        }
+
+        /**
+         * Return the number of the first text.
+         */
+        int first() {
+            return _first;
+        }
+
+        /**
+         * Return the number of the second text.
+         */
+        int second() {
+            return _second;
+        }
+
+        /**
+         * Return the offset of the second text in the first.
+         */
+        int shift() {
+            return _shift;
+        }
+
+        /**
+         * Return the length of the overlap.
+         */
+        int overlap() {
+            return _overlap;
+        }
+
+        /**
+         * Return the number of coincidences in the overlap.
+         */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /**
+         * Return the excess of coincidences, in standard deviations.
+         */
+        double excess() {
+            return _excess;
+        }
+
+        /**
+         * First text.
+         */
+        private final int _first;
+        /**
+         * Second text.
+         */
+        private final int _second;
+        /**
+         * Offset of the second text in the first.
+         */
+        private final int _shift;
+        /**
+         * Overlap length.
+         */
+        private final int _overlap;
+        /**
+         * # coincidences.
+         */
+        private final int _coincidences;
+        /**
+         * Excess coincidences, in standard deviations.
+         */
+        private final double _excess;
+    }
+
+    /**
+     * Orders depths from worst to best; among equal excesses, later
+     * pairs and offsets rank lower.
+     */
+    private static final Comparator<Depth> WORST_FIRST =
+        Comparator.comparingDouble(Depth::excess)
+        .thenComparing(Comparator.comparingInt(Depth::first).reversed())
+        .thenComparing(Comparator.comparingInt(Depth::second).reversed())
+        .thenComparing(Comparator.comparingInt(Depth::shift).reversed());
+
+    /**
+     * Default minimum overlap.
+     */
+    static final int DEFAULT_MIN_OVERLAP = 20;
+    /**
+     * Default number of depths printed.
+     */
+    static final int DEFAULT_TOP = 20;
+    /**
+     * Bits per word of a plane.
+     */
+    private static final int WORD = Long.SIZE;
+    /**
+     * Log base 2 of WORD.
+     */
+    private static final int LOG_WORD = 6;
+    /**
+     * Smallest variance used in computing excesses, so that tiny
+     * overlaps do not divide by zero.
+     */
+    private static final double MIN_VARIANCE = 1e-9;
+
+    /**
+     * Alphabet of the texts.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * # planes holding character bits.
+     */
+    private final int _planes;
+    /**
+     * The texts, bit-sliced: plane p of a text of W words is at
+     * p * W .. (p + 1) * W - 1, and plane _planes marks its characters.
+     */
+    private final List<long[]> _texts = new ArrayList<>();
+    /**
+     * The lengths of the texts.
+     */
+    private final List<Integer> _lengths = new ArrayList<>();
+    /**
+     * Occurrences of each character in the corpus.
+     */
+    private final long[] _frequencies;
+    /**
+     * # characters in the corpus.
+     */
+    private long _total;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the Depths class.
+ *
+ * @author taiga
+ */
+public class DepthsTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a random string of LENGTH upper-case letters drawn using
+     * RANDOM.
+     */
+    private String random(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = UPPER.toChar(random.nextInt(UPPER.size()));
+        }
+        return new String(result);
+    }
+
+    /**
+     * Return a three-rotor machine with rotors I, II, III and
+     * reflector B.
+     */
+    private Machine machine() {
+        return navalMachine(4, 3, "I", "II", "III", "B");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCoincidences() {
+        Random random = new Random(1);
+        Depths corpus = new Depths(UPPER);
+        String a = random(random, 150), b = random(random, 97);
+        corpus.add(a);
+        corpus.add(b.substring(0, 40) + " " + b.substring(40));
+        assertEquals(97, corpus.length(1));
+        for (int shift = -100; shift <= 155; shift += 1) {
+            int expected = 0;
+            for (int i = 0; i < b.length(); i += 1) {
+                if (i + shift >= 0 && i + shift < a.length()
+                    && a.charAt(i + shift) == b.charAt(i)) {
+                    expected += 1;
+                }
+            }
+            assertEquals("shift " + shift, expected,
+                         corpus.coincidences(0, 1, shift));
+            assertEquals("shift " + shift, expected,
+                         corpus.coincidences(1, 0, -shift));
+        }
+    }
+
+    @Test
+    public void testFindsDepth() {
+        Random random = new Random(2);
+        Depths corpus = new Depths(UPPER);
+        for (int i = 0; i < 20; i += 1) {
+            corpus.add(random(random, 80 + random.nextInt(80)));
+        }
+        Machine mach = machine();
+        Main.setUp(mach, "B I II III AXL");
+        String header = "ANOBERKOMMANDODERWEHRMACHTXX";
+        String plain1 = "XXXXXXX" + header + "WETTERIMNORDENUNVERAENDERT";
+        String plain2 = header + "ANGRIFFERFOLGTBEITAGESANBRUCH";
+        Machine other = mach.copy();
+        int first = corpus.add(mach.convert(plain1));
+        for (int i = 0; i < 7; i += 1) {
+            other.convert(0);
+        }
+        int second = corpus.add(other.convert(plain2));
+        List<Depths.Depth> found = corpus.search(20, Integer.MAX_VALUE, 3);
+        assertEquals(3, found.size());
+        Depths.Depth best = found.get(0);
+        assertEquals(first, best.first());
+        assertEquals(second, best.second());
+        assertEquals(7, best.shift());
+        assertTrue(best.excess() > found.get(1).excess());
+    }
+}
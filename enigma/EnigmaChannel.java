@@ -0,0 +1,155 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A byte channel that converts bytes with a Machine on their way from or
+ * to another channel, through a fixed internal buffer.  Bytes are taken
+ * as ISO-8859-1 characters; those not in the machine's alphabet pass
+ * through unchanged without advancing the rotors.  Reading is possible
+ * iff the underlying channel is readable, and writing iff it is
+ * writable.  Writes to a non-blocking channel may consume fewer bytes
+ * than offered; converted bytes the channel did not accept are kept and
+ * written first on the next call, or by flush().  The caller of a
+ * non-blocking channel must flush() until it returns true before
+ * closing: close() does not wait for the channel.
+ *
+ * @author taiga
+ */
+class EnigmaChannel implements ByteChannel {
+
+    /**
+     * A channel converting the bytes of CHANNEL with MACHINE.
+     */
+    EnigmaChannel(Channel channel, Machine machine) {
+        this(channel, machine, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * A channel converting the bytes of CHANNEL with MACHINE, through a
+     * buffer of SIZE bytes.
+     */
+    EnigmaChannel(Channel channel, Machine machine, int size) {
+        _channel = channel;
+        _machine = machine;
+        _in = ByteBuffer.allocate(size);
+        _out = ByteBuffer.allocate(size);
+        _out.flip();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!(_channel instanceof ReadableByteChannel)) {
+            throw new NonReadableChannelException();
+        }
+        _in.clear();
+        if (dst.remaining() < _in.capacity()) {
+            _in.limit(dst.remaining());
+        }
+        int n = ((ReadableByteChannel) _channel).read(_in);
+        if (n > 0) {
+            _machine.convert(_in.array(), 0, n);
+            _in.flip();
+            dst.put(_in);
+        }
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!(_channel instanceof WritableByteChannel)) {
+            throw new NonWritableChannelException();
+        }
+        WritableByteChannel out = (WritableByteChannel) _channel;
+        int consumed = 0;
+        while (true) {
+            while (_out.hasRemaining()) {
+                if (out.write(_out) == 0) {
+                    return consumed;
+                }
+            }
+            if (!src.hasRemaining()) {
+                return consumed;
+            }
+            int n = Math.min(src.remaining(), _out.capacity());
+            _out.clear();
+            src.get(_out.array(), 0, n);
+            _machine.convert(_out.array(), 0, n);
+            _out.limit(n);
+            consumed += n;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _channel.isOpen();
+    }
+
+    /**
+     * Write as many of the converted bytes the underlying channel has
+     * not yet accepted as it will take now, and return true iff none
+     * remain.  On a blocking channel, this writes them all.
+     */
+    boolean flush() throws IOException {
+        if (_channel instanceof WritableByteChannel) {
+            WritableByteChannel out = (WritableByteChannel) _channel;
+            while (_out.hasRemaining()) {
+                if (out.write(_out) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write any converted bytes the underlying channel has not yet
+     * accepted, and close it.  If it will not take them all now, as a
+     * non-blocking channel may not, they are discarded, and an
+     * IOException reports them once the channel is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        int lost = 0;
+        try {
+            if (!flush()) {
+                lost = _out.remaining();
+                _out.position(_out.limit());
+            }
+        } finally {
+            _channel.close();
+        }
+        if (lost > 0) {
+            throw new IOException(lost + " converted bytes not written");
+        }
+    }
+
+    /**
+     * Default buffer size in bytes.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The underlying channel.
+     */
+    private final Channel _channel;
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Buffer for bytes read.
+     */
+    private final ByteBuffer _in;
+    /**
+     * Converted bytes not yet written, between position and limit.
+     */
+    private final ByteBuffer _out;
+}
@@ -0,0 +1,72 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that converts the bytes read from another stream
+ * with a Machine as they arrive.  Bytes are taken as ISO-8859-1
+ * characters; those not in the machine's alphabet pass through
+ * unchanged without advancing the rotors.
+ *
+ * @author taiga
+ */
+class EnigmaInputStream extends FilterInputStream {
+
+    /**
+     * A stream converting the bytes of IN with MACHINE.
+     */
+    EnigmaInputStream(InputStream in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return b;
+        }
+        _one[0] = (byte) b;
+        _machine.convert(_one, 0, 1);
+        return _one[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _machine.convert(b, off, off + n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped += 1;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Buffer for single-byte reads.
+     */
+    private final byte[] _one = new byte[1];
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that converts bytes with a Machine before writing
+ * them to another stream, through a fixed internal buffer.  Bytes are
+ * taken as ISO-8859-1 characters; those not in the machine's alphabet
+ * pass through unchanged without advancing the rotors.
+ *
+ * @author taiga
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /**
+     * A stream writing to OUT the bytes converted by MACHINE.
+     */
+    EnigmaOutputStream(OutputStream out, Machine machine) {
+        this(out, machine, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * A stream writing to OUT the bytes converted by MACHINE, through a
+     * buffer of SIZE bytes.
+     */
+    EnigmaOutputStream(OutputStream out, Machine machine, int size) {
+        super(out);
+        _machine = machine;
+        _buf = new byte[size];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (_count == _buf.length) {
+            flushBuffer();
+        }
+        _buf[_count] = (byte) b;
+        _count += 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_count == _buf.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len, _buf.length - _count);
+            System.arraycopy(b, off, _buf, _count, n);
+            _count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Convert and write out the buffered bytes.
+     */
+    private void flushBuffer() throws IOException {
+        _machine.convert(_buf, 0, _count);
+        out.write(_buf, 0, _count);
+        _count = 0;
+    }
+
+    /**
+     * Default buffer size in bytes.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Bytes not yet converted and written.
+     */
+    private final byte[] _buf;
+    /**
+     * # bytes in _buf.
+     */
+    private int _count;
+}
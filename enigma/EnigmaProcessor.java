@@ -0,0 +1,398 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Flow.Processor that converts chunks of text or bytes with a Machine.
+ * It requests at most capacity() items ahead from upstream and emits
+ * only as its subscriber demands.  Items that queue up while the
+ * subscriber is slow are joined into one converted item of up to
+ * maxBatch() characters, so that small chunks are converted in larger
+ * calls.  The machine's state carries over from chunk to chunk: the
+ * concatenation of the items emitted is the conversion of the
+ * concatenation of the items received.  Characters not in the
+ * machine's alphabet pass through unchanged.
+ *
+ * @author taiga
+ */
+abstract class EnigmaProcessor<T> implements Flow.Processor<T, T> {
+
+    /**
+     * Return a processor converting Strings with MACHINE, keeping up to
+     * CAPACITY items queued and joining them into items of at most
+     * MAXBATCH characters.
+     */
+    static EnigmaProcessor<String> text(Machine machine, int capacity,
+                                        int maxBatch) {
+        return new EnigmaProcessor<String>(machine, capacity, maxBatch) {
+            @Override
+            int length(String item) {
+                return item.length();
+            }
+
+            @Override
+            String convert(List<String> items, int total) {
+                char[] buf = new char[total];
+                int k = 0;
+                for (String item : items) {
+                    item.getChars(0, item.length(), buf, k);
+                    k += item.length();
+                }
+                machine().convert(buf, 0, total);
+                return new String(buf);
+            }
+        };
+    }
+
+    /**
+     * Return a processor converting byte arrays, taken as ISO-8859-1
+     * characters, with MACHINE, keeping up to CAPACITY items queued and
+     * joining them into items of at most MAXBATCH bytes.
+     */
+    static EnigmaProcessor<byte[]> bytes(Machine machine, int capacity,
+                                         int maxBatch) {
+        return new EnigmaProcessor<byte[]>(machine, capacity, maxBatch) {
+            @Override
+            int length(byte[] item) {
+                return item.length;
+            }
+
+            @Override
+            byte[] convert(List<byte[]> items, int total) {
+                byte[] buf = new byte[total];
+                int k = 0;
+                for (byte[] item : items) {
+                    System.arraycopy(item, 0, buf, k, item.length);
+                    k += item.length;
+                }
+                machine().convert(buf, 0, total);
+                return buf;
+            }
+        };
+    }
+
+    /**
+     * A processor converting with MACHINE, keeping up to CAPACITY items
+     * queued and joining them into items of at most MAXBATCH
+     * characters.
+     */
+    EnigmaProcessor(Machine machine, int capacity, int maxBatch) {
+        if (capacity <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("non-positive size");
+        }
+        _machine = machine;
+        _capacity = capacity;
+        _maxBatch = maxBatch;
+    }
+
+    /**
+     * Return the length of ITEM in characters.
+     */
+    abstract int length(T item);
+
+    /**
+     * Return the conversion of the concatenation of ITEMS, whose total
+     * length is TOTAL.
+     */
+    abstract T convert(List<T> items, int total);
+
+    /**
+     * Return the machine doing the conversion.
+     */
+    Machine machine() {
+        return _machine;
+    }
+
+    /**
+     * Return the maximum number of items queued.
+     */
+    int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * Return the maximum length of a joined item.
+     */
+    int maxBatch() {
+        return _maxBatch;
+    }
+
+    /**
+     * Return the number of items the subscriber has requested and not
+     * yet received.
+     */
+    long demand() {
+        return _demand.get();
+    }
+
+    /**
+     * Return the number of items received and not yet converted.
+     */
+    int queueDepth() {
+        return _depth.get();
+    }
+
+    /**
+     * Return the largest value queueDepth() has had.
+     */
+    int maxQueueDepth() {
+        return _maxDepth.get();
+    }
+
+    /**
+     * Return the number of items received from upstream.
+     */
+    long itemsReceived() {
+        return _received.get();
+    }
+
+    /**
+     * Return the number of items emitted, each a batch of one or more
+     * received items.
+     */
+    long batches() {
+        return _batches.get();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        _queue.offer(item);
+        _received.incrementAndGet();
+        _requested.decrementAndGet();
+        int depth = _depth.incrementAndGet();
+        _maxDepth.accumulateAndGet(depth, Math::max);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        _error = throwable;
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (_downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(
+                new IllegalStateException("already subscribed"));
+            return;
+        }
+        _downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    _badRequest = new IllegalArgumentException(
+                        "non-positive request");
+                } else {
+                    _demand.accumulateAndGet(n, (a, b) -> {
+                        long sum = a + b;
+                        return sum < 0 ? Long.MAX_VALUE : sum;
+                    });
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                _cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Emit as many batches as the subscriber demands, request more
+     * items from upstream, and signal termination, from one thread at a
+     * time.  A non-positive request cancels upstream, discards the
+     * queue, and is signalled to the subscriber as an error (Reactive
+     * Streams rule 3.9).
+     */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            if (_cancelled) {
+                discard();
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+                return;
+            }
+            Flow.Subscriber<? super T> down = _downstream;
+            Throwable bad = _badRequest;
+            if (bad != null) {
+                _cancelled = true;
+                discard();
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+                down.onError(bad);
+                return;
+            }
+            if (down != null) {
+                while (_demand.get() > 0 && !_queue.isEmpty()) {
+                    down.onNext(nextBatch());
+                    _batches.incrementAndGet();
+                    _demand.decrementAndGet();
+                }
+                if (_done && _queue.isEmpty()) {
+                    _cancelled = true;
+                    if (_error != null) {
+                        down.onError(_error);
+                    } else {
+                        down.onComplete();
+                    }
+                    return;
+                }
+            }
+            Flow.Subscription up = _upstream;
+            if (up != null && !_done) {
+                long more = _capacity - _depth.get() - _requested.get();
+                if (more > 0) {
+                    _requested.addAndGet(more);
+                    up.request(more);
+                }
+            }
+            missed = _wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove all queued items.
+     */
+    private void discard() {
+        while (_queue.poll() != null) {
+            _depth.decrementAndGet();
+        }
+    }
+
+    /**
+     * Remove and return the conversion of as many queued items as fit
+     * in one batch (at least one).
+     */
+    private T nextBatch() {
+        List<T> items = new ArrayList<>();
+        T first = _queue.poll();
+        int total = length(first);
+        items.add(first);
+        T next = _queue.peek();
+        while (next != null && total + length(next) <= _maxBatch) {
+            items.add(_queue.poll());
+            total += length(next);
+            next = _queue.peek();
+        }
+        _depth.addAndGet(-items.size());
+        return convert(items, total);
+    }
+
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Maximum # items queued.
+     */
+    private final int _capacity;
+    /**
+     * Maximum length of a joined item.
+     */
+    private final int _maxBatch;
+    /**
+     * Items received and not yet converted.
+     */
+    private final Queue<T> _queue = new ConcurrentLinkedQueue<>();
+    /**
+     * # items in _queue.
+     */
+    private final AtomicInteger _depth = new AtomicInteger();
+    /**
+     * Largest value of _depth.
+     */
+    private final AtomicInteger _maxDepth = new AtomicInteger();
+    /**
+     * Outstanding downstream demand.
+     */
+    private final AtomicLong _demand = new AtomicLong();
+    /**
+     * # items received.
+     */
+    private final AtomicLong _received = new AtomicLong();
+    /**
+     * # batches emitted.
+     */
+    private final AtomicLong _batches = new AtomicLong();
+    /**
+     * Work-in-progress counter serializing drain().
+     */
+    private final AtomicInteger _wip = new AtomicInteger();
+    /**
+     * Items requested from upstream and not yet received.
+     */
+    private final AtomicLong _requested = new AtomicLong();
+    /**
+     * The upstream subscription, once subscribed.
+     */
+    private volatile Flow.Subscription _upstream;
+    /**
+     * The subscriber, once subscribed.
+     */
+    private volatile Flow.Subscriber<? super T> _downstream;
+    /**
+     * True once upstream has terminated.
+     */
+    private volatile boolean _done;
+    /**
+     * True once the subscriber has cancelled or been terminated.
+     */
+    private volatile boolean _cancelled;
+    /**
+     * The upstream error, if any.
+     */
+    private volatile Throwable _error;
+    /**
+     * The error for a non-positive request by the subscriber, if any.
+     */
+    private volatile Throwable _badRequest;
+}
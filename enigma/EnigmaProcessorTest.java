@@ -0,0 +1,188 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the EnigmaProcessor class.
+ *
+ * @author taiga
+ */
+public class EnigmaProcessorTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a machine set to B Beta III IV I AXLE with a plugboard.
+     */
+    private Machine machine() {
+        Machine mach = navalMachine(5, 3, "B", "Beta", "III", "IV", "I");
+        mach.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        mach.setRotors("AXLE", "");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                          UPPER));
+        return mach;
+    }
+
+    /**
+     * A publisher that synchronously emits ITEMS as they are requested.
+     */
+    private static class ListPublisher implements Flow.Publisher<String> {
+        /**
+         * A publisher of ITEMS.
+         */
+        ListPublisher(List<String> items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    _pending += n;
+                    if (_emitting) {
+                        return;
+                    }
+                    _emitting = true;
+                    while (_pending > 0 && _next < _items.size()) {
+                        _pending -= 1;
+                        _next += 1;
+                        subscriber.onNext(_items.get(_next - 1));
+                    }
+                    if (_next == _items.size() && !_completed) {
+                        _completed = true;
+                        subscriber.onComplete();
+                    }
+                    _emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    _cancelled = true;
+                }
+            });
+        }
+
+        /** Items to publish. */
+        private final List<String> _items;
+        /** Index of next item. */
+        private int _next;
+        /** Unsatisfied demand. */
+        private long _pending;
+        /** True while emitting. */
+        private boolean _emitting;
+        /** True once completed. */
+        private boolean _completed;
+        /** True once cancelled. */
+        private boolean _cancelled;
+    }
+
+    /**
+     * A subscriber collecting what it receives, requesting nothing until
+     * told to.
+     */
+    private static class Collector implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            _items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            _complete = true;
+        }
+
+        /** Subscription received. */
+        private Flow.Subscription _subscription;
+        /** Items received. */
+        private final List<String> _items = new ArrayList<>();
+        /** True once complete. */
+        private boolean _complete;
+        /** Error received, if any. */
+        private Throwable _error;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBackpressureAndBatching() {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < 200; i += 1) {
+            chunks.add("HELLOWORLD".substring(0, 1 + i % 10));
+        }
+        EnigmaProcessor<String> proc =
+            EnigmaProcessor.text(machine(), 16, 40);
+        Collector collector = new Collector();
+        proc.subscribe(collector);
+        new ListPublisher(chunks).subscribe(proc);
+
+        assertEquals(16, proc.queueDepth());
+        assertEquals(0, collector._items.size());
+        collector._subscription.request(1);
+        assertEquals(1, collector._items.size());
+        assertEquals(1, proc.batches());
+        assertTrue(collector._items.get(0).length() <= 40);
+        assertEquals(16, proc.queueDepth());
+        collector._subscription.request(Long.MAX_VALUE);
+        assertTrue(collector._complete);
+        assertNull(collector._error);
+        assertEquals(16, proc.maxQueueDepth());
+        assertEquals(200, proc.itemsReceived());
+        assertTrue(proc.batches() < 200);
+
+        String all = String.join("", chunks);
+        assertEquals(machine().convert(all),
+                     String.join("", collector._items));
+    }
+
+    @Test
+    public void testBadRequest() {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < 50; i += 1) {
+            chunks.add("HELLO");
+        }
+        EnigmaProcessor<String> proc =
+            EnigmaProcessor.text(machine(), 16, 40);
+        Collector collector = new Collector();
+        proc.subscribe(collector);
+        ListPublisher publisher = new ListPublisher(chunks);
+        publisher.subscribe(proc);
+        assertEquals(16, proc.queueDepth());
+
+        collector._subscription.request(0);
+        assertTrue(collector._error instanceof IllegalArgumentException);
+        assertTrue(publisher._cancelled);
+        assertEquals(0, proc.queueDepth());
+        assertEquals(0, collector._items.size());
+        assertFalse(collector._complete);
+
+        collector._subscription.request(1);
+        assertEquals(0, collector._items.size());
+    }
+}
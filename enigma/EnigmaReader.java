@@ -0,0 +1,66 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A reader that converts the characters read from another reader with
+ * a Machine as they arrive.  Characters not in the machine's alphabet
+ * pass through unchanged without advancing the rotors.
+ *
+ * @author taiga
+ */
+class EnigmaReader extends FilterReader {
+
+    /**
+     * A reader converting the characters of IN with MACHINE.
+     */
+    EnigmaReader(Reader in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = in.read();
+        if (c < 0) {
+            return c;
+        }
+        _one[0] = (char) c;
+        _machine.convert(_one, 0, 1);
+        return _one[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = in.read(cbuf, off, len);
+        if (n > 0) {
+            _machine.convert(cbuf, off, off + n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped += 1;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Buffer for single-character reads.
+     */
+    private final char[] _one = new char[1];
+}
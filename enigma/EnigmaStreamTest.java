@@ -0,0 +1,304 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the stream and channel adapters.
+ *
+ * @author taiga
+ */
+public class EnigmaStreamTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a machine set to B Beta III IV I AXLE with a plugboard.
+     */
+    private Machine machine() {
+        Machine mach = navalMachine(5, 3, "B", "Beta", "III", "IV", "I");
+        mach.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        mach.setRotors("AXLE", "");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                          UPPER));
+        return mach;
+    }
+
+    /**
+     * Return a random message of N characters, mostly letters with
+     * some spaces and newlines.
+     */
+    private String message(int n) {
+        Random random = new Random(n);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            int r = random.nextInt(30);
+            if (r == 26) {
+                result.append('\n');
+            } else if (r > 26) {
+                result.append(' ');
+            } else {
+                result.append(UPPER.toChar(r));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return MSG converted by a fresh machine, with its non-letters
+     * left in place.
+     */
+    private String expected(String msg) {
+        String converted = machine().convert(msg.replaceAll("[^A-Z]", ""));
+        StringBuilder result = new StringBuilder();
+        int k = 0;
+        for (char c : msg.toCharArray()) {
+            if (UPPER.contains(c)) {
+                result.append(converted.charAt(k));
+                k += 1;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the contents of IN, read in chunks of up to N bytes.
+     */
+    private String readAll(InputStream in, int n) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[n];
+        for (int k = in.read(buf); k >= 0; k = in.read(buf)) {
+            out.write(buf, 0, k);
+        }
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInputStream() throws IOException {
+        String msg = message(10000);
+        InputStream in = new EnigmaInputStream(
+            new ByteArrayInputStream(msg.getBytes(StandardCharsets.US_ASCII)),
+            machine());
+        assertEquals(expected(msg), readAll(in, 333));
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+        String msg = message(10000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new EnigmaOutputStream(bytes, machine(), 64);
+        byte[] data = msg.getBytes(StandardCharsets.US_ASCII);
+        out.write(data, 0, 100);
+        out.write(data[100]);
+        out.write(data, 101, data.length - 101);
+        out.close();
+        assertEquals(expected(msg),
+                     bytes.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testReaderWriter() throws IOException {
+        String msg = message(10000);
+        StringWriter result = new StringWriter();
+        Writer out = new EnigmaWriter(result, machine(), 100);
+        EnigmaReader in = new EnigmaReader(new StringReader(msg), machine());
+        char[] buf = new char[77];
+        for (int k = in.read(buf); k >= 0; k = in.read(buf)) {
+            out.write(new String(buf, 0, k));
+        }
+        out.close();
+        assertEquals(expected(expected(msg)), result.toString());
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        String msg = message(10000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EnigmaChannel out = new EnigmaChannel(Channels.newChannel(bytes),
+                                              machine(), 50);
+        EnigmaChannel in = new EnigmaChannel(
+            Channels.newChannel(new ByteArrayInputStream(
+                msg.getBytes(StandardCharsets.US_ASCII))), machine());
+        ByteBuffer buf = ByteBuffer.allocate(123);
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            out.write(buf);
+            buf.clear();
+        }
+        out.close();
+        assertEquals(expected(expected(msg)),
+                     bytes.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * A channel collecting the bytes written to it into BYTES, accepting
+     * at most 7 of them per write and none on every third write.
+     */
+    private WritableByteChannel reluctant(ByteArrayOutputStream bytes) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                _writes += 1;
+                if (_writes % 3 == 0) {
+                    return 0;
+                }
+                int n = Math.min(src.remaining(), 7);
+                for (int i = 0; i < n; i += 1) {
+                    bytes.write(src.get());
+                }
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return _open;
+            }
+
+            @Override
+            public void close() {
+                _open = false;
+            }
+
+            /**
+             * Number of calls of write.
+             */
+            private int _writes;
+            /**
+             * False once closed.
+             */
+            private boolean _open = true;
+        };
+    }
+
+    @Test
+    public void testPartialWrites() throws IOException {
+        String msg = message(1000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel channel = reluctant(bytes);
+        EnigmaChannel out = new EnigmaChannel(channel, machine(), 50);
+        ByteBuffer src =
+            ByteBuffer.wrap(msg.getBytes(StandardCharsets.US_ASCII));
+        int consumed = 0;
+        while (src.hasRemaining()) {
+            consumed += out.write(src);
+        }
+        assertEquals(msg.length(), consumed);
+        assertTrue(bytes.size() < msg.length());
+        while (!out.flush()) {
+            assertTrue(bytes.size() < msg.length());
+        }
+        out.close();
+        assertFalse(channel.isOpen());
+        assertEquals(expected(msg),
+                     bytes.toString(StandardCharsets.ISO_8859_1));
+
+        WritableByteChannel stuck = reluctant(new ByteArrayOutputStream());
+        out = new EnigmaChannel(stuck, machine(), 50);
+        stuck.write(ByteBuffer.allocate(0));
+        stuck.write(ByteBuffer.allocate(0));
+        out.write(ByteBuffer.wrap(msg.getBytes(StandardCharsets.US_ASCII)));
+        try {
+            out.close();
+            fail("unwritten bytes discarded silently");
+        } catch (IOException excp) {
+            assertFalse(stuck.isOpen());
+        }
+    }
+
+    @Test
+    public void testSeekableChannel() throws IOException {
+        byte[] plain = message(5000).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] cipher = plain.clone();
+        Machine mach = machine();
+        for (int i = 0; i < cipher.length; i += 1) {
+            int c = UPPER.indexOf((char) cipher[i]);
+            if (c >= 0) {
+                cipher[i] = (byte) UPPER.toChar(mach.convert(c));
+            } else {
+                mach.step();
+            }
+        }
+        File file = File.createTempFile("enigma", ".enc");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             SeekableEnigmaChannel channel =
+                 new SeekableEnigmaChannel(raf.getChannel(), machine())) {
+            for (int start = 4900; start >= 0; start -= 700) {
+                int end = Math.min(start + 700, plain.length);
+                channel.position(start);
+                channel.write(ByteBuffer.wrap(plain, start, end - start));
+                assertEquals(end, channel.position());
+            }
+            assertArrayEquals(cipher, Files.readAllBytes(file.toPath()));
+
+            Random random = new Random(3);
+            for (int i = 0; i < 50; i += 1) {
+                int start = random.nextInt(plain.length);
+                int length = random.nextInt(plain.length - start + 1);
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                channel.position(start);
+                while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                    continue;
+                }
+                assertArrayEquals(Arrays.copyOfRange(plain, start,
+                                                     start + length),
+                                  buf.array());
+            }
+            channel.position(plain.length);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testStepIndex() {
+        Machine mach = machine();
+        StepIndex index = new StepIndex(mach);
+        int[] pos = new int[mach.numRotors()];
+        long end = index.tail() + 2 * index.period();
+        for (long n = 0; n < end; n += 1) {
+            index.positions(n, pos);
+            for (int k = 1; k < mach.numRotors(); k += 1) {
+                assertEquals(mach.getRotor(k).setting(), pos[k]);
+            }
+            mach.step();
+        }
+        index.positions(end + 1000 * index.period(), pos);
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            assertEquals(mach.getRotor(k).setting(), pos[k]);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer that converts characters with a Machine before writing them
+ * to another writer, through a fixed internal buffer.  Characters not
+ * in the machine's alphabet pass through unchanged without advancing
+ * the rotors.
+ *
+ * @author taiga
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /**
+     * A writer writing to OUT the characters converted by MACHINE.
+     */
+    EnigmaWriter(Writer out, Machine machine) {
+        this(out, machine, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * A writer writing to OUT the characters converted by MACHINE,
+     * through a buffer of SIZE characters.
+     */
+    EnigmaWriter(Writer out, Machine machine, int size) {
+        super(out);
+        _machine = machine;
+        _buf = new char[size];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (_count == _buf.length) {
+            flushBuffer();
+        }
+        _buf[_count] = (char) c;
+        _count += 1;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_count == _buf.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len, _buf.length - _count);
+            System.arraycopy(cbuf, off, _buf, _count, n);
+            _count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_count == _buf.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len, _buf.length - _count);
+            str.getChars(off, off + n, _buf, _count);
+            _count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+    /**
+     * Convert and write out the buffered characters.
+     */
+    private void flushBuffer() throws IOException {
+        _machine.convert(_buf, 0, _count);
+        out.write(_buf, 0, _count);
+        _count = 0;
+    }
+
+    /**
+     * Default buffer size in characters.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The machine doing the conversion.
+     */
+    private final Machine _machine;
+    /**
+     * Characters not yet converted and written.
+     */
+    private final char[] _buf;
+    /**
+     * # characters in _buf.
+     */
+    private int _count;
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events describing what the simulator does, so
+ * that recordings of a run show reading the configuration, setting up
+ * sections and converting text next to the JDK's own events.  All are
+ * in the category "Enigma".
+ * <p>
+ * Events follow the usual pattern: create one, begin() it, do the work,
+ * and commit() it, filling in fields only when shouldCommit() is true.
+ * While no recording enables an event type, begin(), shouldCommit() and
+ * commit() do nothing, and the JIT compiler removes the event object, so
+ * the events cost effectively nothing and may stay in place.
+ * CharSampled is the exception to "always on": it is disabled unless a
+ * recording enables it, and then only every SAMPLE_INTERVAL'th character
+ * a machine converts is recorded.
+ *
+ * @author taiga
+ */
+final class Events {
+
+    /**
+     * Not instantiable.
+     */
+    private Events() {
+    }
+
+    /**
+     * Number of characters converted per CharSampled event.
+     */
+    static final int SAMPLE_INTERVAL = 1 << 10;
+
+    /**
+     * Reading a configuration file.
+     */
+    @Name("enigma.ConfigRead")
+    @Label("Config Read")
+    @Category("Enigma")
+    @Description("Reading a configuration file")
+    @StackTrace(false)
+    static class ConfigRead extends Event {
+        /**
+         * # rotors described.
+         */
+        @Label("Rotors")
+        int rotors;
+        /**
+         * # rotor slots.
+         */
+        @Label("Slots")
+        int slots;
+        /**
+         * # pawls.
+         */
+        @Label("Pawls")
+        int pawls;
+    }
+
+    /**
+     * Setting up a machine from a setting line.
+     */
+    @Name("enigma.SetUp")
+    @Label("Set Up")
+    @Category("Enigma")
+    @Description("Setting up a machine from a setting line")
+    @StackTrace(false)
+    static class SetUp extends Event {
+        /**
+         * Names of the rotors inserted, left to right.
+         */
+        @Label("Rotors")
+        String rotors;
+        /**
+         * # plugboard pairs.
+         */
+        @Label("Plugboard Pairs")
+        int plugboardPairs;
+        /**
+         * True iff the setting came from the setting cache.
+         */
+        @Label("Cached")
+        boolean cached;
+    }
+
+    /**
+     * Converting a message line or buffer.
+     */
+    @Name("enigma.Conversion")
+    @Label("Conversion")
+    @Category("Enigma")
+    @Description("Converting a message line or buffer")
+    @StackTrace(false)
+    static class Conversion extends Event {
+        /**
+         * # characters in the line or buffer.
+         */
+        @Label("Length")
+        @DataAmount(DataAmount.BYTES)
+        int length;
+        /**
+         * How the characters were converted: "tape", "kernel" or
+         * "rotors".
+         */
+        @Label("Engine")
+        String engine;
+    }
+
+    /**
+     * The conversion of one character, sampled.
+     */
+    @Name("enigma.CharSampled")
+    @Label("Character Sampled")
+    @Category("Enigma")
+    @Description("One of every " + SAMPLE_INTERVAL
+                 + " characters converted")
+    @Enabled(false)
+    @StackTrace(false)
+    static class CharSampled extends Event {
+        /**
+         * Input character.
+         */
+        @Label("Input")
+        char input;
+        /**
+         * Output character.
+         */
+        @Label("Output")
+        char output;
+        /**
+         * Rotor settings after advancing, left to right.
+         */
+        @Label("Settings")
+        String settings;
+    }
+
+    /**
+     * Return the number of pairs in PLUGBOARD, a permutation made of
+     * transpositions, or 0 if it is null.
+     */
+    static int pairs(Permutation plugboard) {
+        if (plugboard == null) {
+            return 0;
+        }
+        int moved = 0;
+        for (int c = 0; c < plugboard.size(); c += 1) {
+            if (plugboard.permute(c) != c) {
+                moved += 1;
+            }
+        }
+        return moved / 2;
+    }
+}
@@ -0,0 +1,233 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Encrypts one message under many setting lines at once, as for
+ * generating test vectors or checking candidate keys.  The settings
+ * are grouped by rotor selection and plugboard, and each group is
+ * split into batches of up to BATCH settings, which are converted in
+ * parallel.  A batch sets up its own copy of the machine with the first
+ * of its settings, as Main.setUp would; each of the others then changes
+ * only the rotor positions and ring settings, reusing the parsed
+ * plugboard and the rotor tables fused with it, before converting the
+ * message in place into its row of the output.  Within a group,
+ * settings are ordered by ring setting, so that the machine's per-setup
+ * state changes as little as possible.
+ * <p>
+ * The results go into one matrix, allocated by the caller: row I of
+ * OUT, which holds OUT[I * L .. (I+1) * L - 1] for a message of length
+ * L, receives the conversion of the message under setting line #I.
+ *
+ * @author taiga
+ */
+public final class FanOut {
+
+    /**
+     * For the configuration named ARGS[0], print the conversion of the
+     * message in the file named ARGS[2], less its whitespace, under each
+     * setting line in the file named ARGS[1], one per line.  Setting
+     * lines may start with '*', as in input files for Main.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){3,3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.FanOut CONFIG SETTINGS "
+                            + "MESSAGE");
+            }
+            List<String> files = options.get("--");
+            FanOut fanOut = new FanOut(Main.loadConfig(files.get(0)));
+            List<String> settings = new ArrayList<>();
+            for (String line
+                     : Files.readAllLines(Paths.get(files.get(1)),
+                                          StandardCharsets.ISO_8859_1)) {
+                if (!line.trim().isEmpty()) {
+                    settings.add(line.trim().startsWith("*")
+                                 ? Main.settingLine(line.trim()) : line);
+                }
+            }
+            String message =
+                new String(Files.readAllBytes(Paths.get(files.get(2))),
+                           StandardCharsets.ISO_8859_1)
+                .replaceAll("\\s", "");
+            char[] out = fanOut.convert(message, settings);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < settings.size(); i += 1) {
+                text.append(out, i * message.length(), message.length())
+                    .append(System.lineSeparator());
+            }
+            System.out.print(text);
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A fan-out engine for copies of PROTOTYPE, which is not itself
+     * changed and should not be changed while I am in use.
+     */
+    FanOut(Machine prototype) {
+        _prototype = prototype;
+        _alphabet = prototype.alphabet();
+    }
+
+    /**
+     * Return the conversions of MESSAGE under each of SETTINGS, as rows
+     * of a new matrix (see convert(String, List, char[])).
+     */
+    char[] convert(String message, List<String> settings) {
+        char[] result = new char[settings.size() * message.length()];
+        convert(message, settings, result);
+        return result;
+    }
+
+    /**
+     * Convert MESSAGE under each setting line in SETTINGS (as for
+     * Main.setUp), storing the conversion under SETTINGS[I] into row I
+     * of OUT.  MESSAGE must consist of characters in the machine's
+     * alphabet.
+     */
+    void convert(String message, List<String> settings, char[] out) {
+        int length = message.length();
+        if ((long) settings.size() * length > out.length) {
+            throw error("output matrix too small");
+        }
+        char[] text = message.toCharArray();
+        for (char c : text) {
+            if (!_alphabet.contains(c)) {
+                throw error("char not in the alphabet");
+            }
+        }
+        List<Setting[]> batches = batches(settings);
+        batches.parallelStream().forEach(batch -> {
+            Machine machine = _prototype.copy();
+            for (int k = 0; k < batch.length; k += 1) {
+                Setting s = batch[k];
+                try {
+                    if (k == 0) {
+                        Main.setUp(machine, s.line);
+                    } else {
+                        machine.setRotors(s.positions, s.rings);
+                    }
+                } catch (EnigmaException excp) {
+                    throw error("setting %d: %s", s.index + 1,
+                                excp.getMessage());
+                }
+                int start = s.index * length;
+                System.arraycopy(text, 0, out, start, length);
+                machine.convert(out, start, start + length);
+            }
+        });
+    }
+
+    /**
+     * Return SETTINGS parsed, grouped by rotor selection and plugboard,
+     * ordered by ring setting within each group, and split into batches
+     * of at most BATCH.
+     */
+    private List<Setting[]> batches(List<String> settings) {
+        Map<String, List<Setting>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < settings.size(); i += 1) {
+            Setting s = new Setting(i, settings.get(i),
+                                    _prototype.numRotors());
+            groups.computeIfAbsent(s.group, g -> new ArrayList<>()).add(s);
+        }
+        List<Setting[]> result = new ArrayList<>();
+        for (List<Setting> group : groups.values()) {
+            group.sort(Comparator.comparing((Setting s) -> s.rings)
+                       .thenComparingInt(s -> s.index));
+            for (int k = 0; k < group.size(); k += BATCH) {
+                result.add(group.subList(k, Math.min(k + BATCH,
+                                                     group.size()))
+                           .toArray(new Setting[0]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A setting line, split into the parts that differ within a group
+     * and the key of its group.
+     */
+    private static class Setting {
+
+        /**
+         * Setting line #INDEX, LINE, for a machine with NUMROTORS
+         * slots.
+         */
+        Setting(int index, String line, int numRotors) {
+            this.index = index;
+            this.line = SettingCache.normalize(line);
+            String[] fields = this.line.split(" ");
+            if (fields.length < numRotors + 1) {
+                throw error("setting %d: setting wrong", index + 1);
+            }
+            positions = fields[numRotors];
+            int plugs = numRotors + 1;
+            if (fields.length > plugs && !fields[plugs].startsWith("(")) {
+                rings = fields[plugs];
+                plugs += 1;
+            } else {
+                rings = "";
+            }
+            String[] key = Arrays.copyOf(fields, numRotors
+                                         + fields.length - plugs);
+            System.arraycopy(fields, plugs, key, numRotors,
+                             fields.length - plugs);
+            group = String.join(" ", key);
+        }
+
+        /**
+         * Position in the list of settings.
+         */
+        final int index;
+        /**
+         * The setting line, normalized.
+         */
+        final String line;
+        /**
+         * Rotor positions.
+         */
+        final String positions;
+        /**
+         * Ring settings, or "" for none.
+         */
+        final String rings;
+        /**
+         * The rotor names and plugboard cycles.
+         */
+        final String group;
+    }
+
+    /**
+     * Most settings converted by one task.
+     */
+    static final int BATCH = 256;
+
+    /**
+     * Machine copied by each batch.
+     */
+    private final Machine _prototype;
+    /**
+     * Its alphabet.
+     */
+    private final Alphabet _alphabet;
+}
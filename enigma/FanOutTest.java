@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for FanOut.
+ *
+ * @author taiga
+ */
+public class FanOutTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a five-slot machine with rotors B, Beta, I, III and IV.
+     */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "I", "III", "IV");
+    }
+
+    /**
+     * Return N random letters from RANDOM.
+     */
+    private String letters(Random random, int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFanOut() {
+        String[] orders = { "B Beta III IV I", "B Beta I IV III" };
+        String[] plugboards = { "", " (HQ) (EX) (IP)", " (AB)" };
+        Random random = new Random(49);
+        List<String> settings = new ArrayList<>();
+        for (int i = 0; i < 3 * FanOut.BATCH; i += 1) {
+            String rings =
+                random.nextBoolean() ? " " + letters(random, 4) : "";
+            settings.add(orders[random.nextInt(orders.length)] + " "
+                         + letters(random, 4) + rings
+                         + plugboards[random.nextInt(plugboards.length)]);
+        }
+        String message = letters(random, 100);
+
+        char[] out = new FanOut(machine()).convert(message, settings);
+        assertEquals(settings.size() * message.length(), out.length);
+        for (int i = 0; i < settings.size(); i += 1) {
+            Machine mach = machine();
+            Main.setUp(mach, settings.get(i));
+            assertEquals(settings.get(i), mach.convert(message),
+                         new String(out, i * message.length(),
+                                    message.length()));
+        }
+    }
+
+    @Test
+    public void testBadSetting() {
+        List<String> settings = new ArrayList<>();
+        settings.add("B Beta III IV I AXLE");
+        settings.add("B Beta III IV I AX1E");
+        try {
+            new FanOut(machine()).convert("HELLO", settings);
+            fail("bad setting accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("setting 2:"));
+        }
+        try {
+            new FanOut(machine()).convert("HELLO", settings, new char[5]);
+            fail("small output accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package enigma;
+
+import java.util.Arrays;
+
+/**
+ * A Machine flattened into primitive arrays: rotor positions in an
+ * int[], the kind of each slot's rotor in a byte[], notches as one
+ * bitset per slot, and wiring tables indexed by slot and position with
+ * ring settings and plugboard folded in, built from the machine's
+ * Wiring and Stepping.  Stepping and conversion make no virtual calls,
+ * and produce exactly the output of the Machine the FlatMachine was
+ * made from.  A FlatMachine is a snapshot of its Machine's setup; it
+ * does not follow later changes to it.
+ *
+ * @author taiga
+ */
+class FlatMachine {
+
+    /**
+     * A flat copy of the current setup and rotor positions of MACHINE.
+     */
+    FlatMachine(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        Rotor[] slots = Stepping.slots(machine);
+        Stepping stepping = new Stepping(alphabet, slots);
+        Wiring wiring = new Wiring(slots);
+        _n = slots.length;
+        _size = alphabet.size();
+        _words = (_size + WORD - 1) / WORD;
+        _pos = new int[_n];
+        _kinds = new byte[_n];
+        _notches = new long[_n * _words];
+        _forward = new int[_n * _size * _size];
+        _backward = new int[_n * _size * _size];
+        Permutation plugboard = machine.plugboard();
+        int[] plug = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            plug[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        for (int k = 0; k < _n; k += 1) {
+            _pos[k] = slots[k].setting();
+            if (slots[k].reflecting()) {
+                _kinds[k] = REFLECTOR;
+            } else if (slots[k].rotates()) {
+                _kinds[k] = MOVING;
+            } else {
+                _kinds[k] = FIXED;
+            }
+            boolean fast = k == _n - 1;
+            for (int p = 0; p < _size; p += 1) {
+                if (stepping.atNotch(k, p)) {
+                    _notches[k * _words + p / WORD] |= 1L << (p % WORD);
+                }
+                int offset = Math.floorMod(p - slots[k].optional(), _size);
+                int row = (k * _size + p) * _size;
+                for (int c = 0; c < _size; c += 1) {
+                    _forward[row + c] =
+                        wiring.through(wiring.forward(k), offset,
+                                       fast ? plug[c] : c);
+                    int out = wiring.through(wiring.backward(k), offset, c);
+                    _backward[row + c] = fast ? plug[out] : out;
+                }
+            }
+        }
+        _chars = new char[_size];
+        int max = 0;
+        for (int c = 0; c < _size; c += 1) {
+            _chars[c] = alphabet.toChar(c);
+            max = Math.max(max, _chars[c]);
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int c = 0; c < _size; c += 1) {
+            _index[_chars[c]] = c;
+        }
+    }
+
+    /**
+     * Return the number of rotor slots.
+     */
+    int numRotors() {
+        return _n;
+    }
+
+    /**
+     * Return the setting of the rotor in slot K.
+     */
+    int setting(int k) {
+        return _pos[k];
+    }
+
+    /**
+     * Set the rotors of MACHINE, which must have the setup I was made
+     * from, to my rotor settings.
+     */
+    void store(Machine machine) {
+        machine.setPositions(_pos);
+    }
+
+    /**
+     * Advance my rotors and return the conversion of C (an index in
+     * the alphabet), as Machine.convert(int) does.
+     */
+    int convert(int c) {
+        step();
+        int[] pos = _pos;
+        int sq = _size * _size;
+        for (int k = _n - 1; k >= 0; k -= 1) {
+            c = _forward[k * sq + pos[k] * _size + c];
+        }
+        for (int k = 1; k < _n; k += 1) {
+            c = _backward[k * sq + pos[k] * _size + c];
+        }
+        return c;
+    }
+
+    /**
+     * Convert the characters BUF[START .. END-1] in place.  Characters
+     * not in the alphabet are left unchanged and do not advance the
+     * rotors.
+     */
+    void convert(char[] buf, int start, int end) {
+        for (int k = start; k < end; k += 1) {
+            char ch = buf[k];
+            int c = ch < _index.length ? _index[ch] : -1;
+            if (c >= 0) {
+                buf[k] = _chars[convert(c)];
+            }
+        }
+    }
+
+    /**
+     * Advance my rotors as Machine.advanceRotors does: the fast rotor
+     * always, and each other rotor when the rotor to its right carries
+     * it or, if the rotor to its left moves, when it is at a notch
+     * itself.
+     */
+    private void step() {
+        int first = _n - 1;
+        boolean carry = atNotch(first);
+        advance(first);
+        for (int i = first - 1; i > 0; i -= 1) {
+            boolean notch = atNotch(i);
+            byte left = _kinds[i - 1];
+            if (carry) {
+                if (!notch || left != FIXED) {
+                    advance(i);
+                    carry = notch && left == MOVING;
+                }
+            } else if (notch && left == MOVING) {
+                advance(i);
+                carry = true;
+            }
+        }
+    }
+
+    /**
+     * Return true iff the rotor in slot K is at a notch.
+     */
+    private boolean atNotch(int k) {
+        int p = _pos[k];
+        return (_notches[k * _words + p / WORD] >>> (p % WORD) & 1) != 0;
+    }
+
+    /**
+     * Advance the rotor in slot K, if it moves.
+     */
+    private void advance(int k) {
+        if (_kinds[k] == MOVING) {
+            int p = _pos[k] + 1;
+            _pos[k] = p == _size ? 0 : p;
+        }
+    }
+
+    /**
+     * Kind of a reflector.
+     */
+    static final byte REFLECTOR = 0;
+    /**
+     * Kind of a rotor that neither moves nor reflects.
+     */
+    static final byte FIXED = 1;
+    /**
+     * Kind of a moving rotor.
+     */
+    static final byte MOVING = 2;
+    /**
+     * Bits per notch bitset word.
+     */
+    private static final int WORD = Long.SIZE;
+
+    /**
+     * # rotor slots.
+     */
+    private final int _n;
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * Notch bitset words per slot.
+     */
+    private final int _words;
+    /**
+     * Rotor settings, by slot.
+     */
+    private final int[] _pos;
+    /**
+     * Rotor kinds, by slot.
+     */
+    private final byte[] _kinds;
+    /**
+     * Notch bitsets, _words per slot.
+     */
+    private final long[] _notches;
+    /**
+     * Forward tables: entry (k * size + p) * size + c is the result of
+     * passing c through slot k at setting p.
+     */
+    private final int[] _forward;
+    /**
+     * Backward tables, laid out as _forward.
+     */
+    private final int[] _backward;
+    /**
+     * The alphabet's characters, by index.
+     */
+    private final char[] _chars;
+    /**
+     * Index in the alphabet of each character up to the largest, or -1.
+     */
+    private final int[] _index;
+}
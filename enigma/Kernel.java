@@ -0,0 +1,26 @@
+package enigma;
+
+/**
+ * A conversion routine specialized to one machine setup: the rotors in
+ * each slot, their ring settings, and the plugboard.  Rotor positions
+ * are held by the caller as an array of settings indexed by slot, as
+ * for Stepping, and are advanced as characters are converted.
+ *
+ * @author taiga
+ */
+interface Kernel {
+
+    /**
+     * Convert the characters BUF[START .. END-1] in place, starting from
+     * rotor settings POS and leaving in POS the settings after the last
+     * conversion.  Characters not in the alphabet are left unchanged and
+     * do not advance the rotors.
+     */
+    void convert(int[] pos, char[] buf, int start, int end);
+
+    /**
+     * Convert the bytes BUF[START .. END-1], taken as ISO-8859-1
+     * characters, in place, as for convert(int[], char[], int, int).
+     */
+    void convert(int[] pos, byte[] buf, int start, int end);
+}
@@ -0,0 +1,165 @@
+package enigma;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * The template from which Kernels defines specialized kernels.  It is
+ * never used as is: its class file is defined anew, as a hidden class,
+ * for each machine setup, with that setup's tables as class data.  The
+ * tables are then the static final fields of a class of their own, so
+ * that the JIT compiler treats them and the rotor count as constants,
+ * unrolls the loops over rotor slots, and compiles each kernel
+ * separately.
+ * <p>
+ * For each slot k, FORWARD[k][p * SIZE + c] is the result of passing c
+ * forward through the rotor in slot k at setting p, its ring setting
+ * accounted for; BACKWARD is the same for the inverse wiring.  The
+ * plugboard is folded into the fast rotor's tables.  NOTCH[k * SIZE + p]
+ * is true iff the rotor in slot k is at a notch at setting p.
+ *
+ * @author taiga
+ */
+final class KernelTemplate implements Kernel {
+
+    @Override
+    public void convert(int[] pos, char[] buf, int start, int end) {
+        for (int k = start; k < end; k += 1) {
+            char ch = buf[k];
+            int c = ch < INDEX.length ? INDEX[ch] : -1;
+            if (c >= 0) {
+                buf[k] = CHARS[convert(pos, c)];
+            }
+        }
+    }
+
+    @Override
+    public void convert(int[] pos, byte[] buf, int start, int end) {
+        for (int k = start; k < end; k += 1) {
+            int ch = buf[k] & BYTE_MASK;
+            int c = ch < INDEX.length ? INDEX[ch] : -1;
+            if (c >= 0) {
+                buf[k] = (byte) CHARS[convert(pos, c)];
+            }
+        }
+    }
+
+    /**
+     * Advance the settings POS and return the conversion of C.
+     */
+    private static int convert(int[] pos, int c) {
+        step(pos);
+        for (int k = N - 1; k >= 0; k -= 1) {
+            c = FORWARD[k][pos[k] * SIZE + c];
+        }
+        for (int k = 1; k < N; k += 1) {
+            c = BACKWARD[k][pos[k] * SIZE + c];
+        }
+        return c;
+    }
+
+    /**
+     * Advance the settings POS as Machine.advanceRotors would.
+     */
+    private static void step(int[] pos) {
+        int first = N - 1;
+        boolean check = NOTCH[first * SIZE + pos[first]];
+        advance(pos, first);
+        for (int i = first - 1; i > 0; i -= 1) {
+            boolean notch = NOTCH[i * SIZE + pos[i]];
+            if (check) {
+                if (!notch) {
+                    advance(pos, i);
+                    check = false;
+                } else if (ROTATES[i - 1]) {
+                    advance(pos, i);
+                } else if (REFLECTING[i - 1]) {
+                    advance(pos, i);
+                    check = false;
+                }
+            } else if (notch && ROTATES[i - 1]) {
+                advance(pos, i);
+                check = true;
+            }
+        }
+    }
+
+    /**
+     * Advance the setting of slot K of POS, if its rotor rotates.
+     */
+    private static void advance(int[] pos, int k) {
+        if (ROTATES[k]) {
+            pos[k] = pos[k] + 1 == SIZE ? 0 : pos[k] + 1;
+        }
+    }
+
+    /**
+     * Return my class data, or null if I am not a hidden class.
+     */
+    private static Object[] classData() {
+        try {
+            return MethodHandles.classData(MethodHandles.lookup(),
+                                           ConstantDescs.DEFAULT_NAME,
+                                           Object[].class);
+        } catch (IllegalAccessException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Return element I of my class data, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T datum(int i) {
+        return DATA == null ? null : (T) DATA[i];
+    }
+
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * My class data, laid out as described in Kernels.
+     */
+    private static final Object[] DATA = classData();
+    /**
+     * Alphabet size.
+     */
+    private static final int SIZE =
+        DATA == null ? 0 : (Integer) DATA[Kernels.SIZE];
+    /**
+     * Number of rotor slots.
+     */
+    private static final int N =
+        DATA == null ? 0 : (Integer) DATA[Kernels.SLOTS];
+    /**
+     * Forward tables, by slot.
+     */
+    private static final int[][] FORWARD = datum(Kernels.FORWARD);
+    /**
+     * Backward tables, by slot.
+     */
+    private static final int[][] BACKWARD = datum(Kernels.BACKWARD);
+    /**
+     * True for the slots whose rotors rotate.
+     */
+    private static final boolean[] ROTATES = datum(Kernels.ROTATES);
+    /**
+     * True for the slots whose rotors reflect.
+     */
+    private static final boolean[] REFLECTING = datum(Kernels.REFLECTING);
+    /**
+     * Notch positions, by slot.
+     */
+    private static final boolean[] NOTCH = datum(Kernels.NOTCH);
+    /**
+     * The alphabet's characters, by index.
+     */
+    private static final char[] CHARS = datum(Kernels.CHARS);
+    /**
+     * Index in the alphabet of each character up to the largest in the
+     * alphabet, or -1.
+     */
+    private static final int[] INDEX = datum(Kernels.INDEX);
+}
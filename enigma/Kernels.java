@@ -0,0 +1,266 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Generates Kernels: conversion routines specialized to the setup of a
+ * Machine.  Each kernel is the class KernelTemplate defined anew as a
+ * hidden class whose class data holds the setup's tables, so that the
+ * JIT compiler sees the tables and the rotor count as constants.  Where
+ * hidden classes cannot be defined, generate() returns null and the
+ * machine keeps converting in the ordinary way.
+ * <p>
+ * The class data is an array of objects indexed by the constants SIZE,
+ * SLOTS, FORWARD, BACKWARD, ROTATES, REFLECTING, NOTCH, CHARS and INDEX
+ * below; see KernelTemplate for their meaning.
+ *
+ * @author taiga
+ */
+final class Kernels {
+
+    /**
+     * Time the conversion of a random message with and without a
+     * kernel, and by a FlatMachine.  ARGS[0] names a configuration file
+     * and ARGS[1] is a setting line; --length=N sets the message length
+     * (default 2^20) and --rounds=N the number of timed rounds of each
+     * kind (default 10).
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--length=(\\d+) --rounds=(\\d+) "
+                                + "--=(.*){2,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Kernels [--length=N] "
+                            + "[--rounds=N] CONFIG SETTING");
+            }
+            int length = DEFAULT_LENGTH;
+            if (options.contains("--length")) {
+                length = Integer.parseInt(options.getLast("--length"));
+            }
+            int rounds = DEFAULT_ROUNDS;
+            if (options.contains("--rounds")) {
+                rounds = Integer.parseInt(options.getLast("--rounds"));
+            }
+            List<String> files = options.get("--");
+            benchmark(Main.loadConfig(files.get(0)), files.get(1),
+                      length, rounds);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Print the best throughput of ROUNDS conversions of a random
+     * message of LENGTH characters by MACHINE set up with SETTING,
+     * without a kernel, with a kernel, and by a FlatMachine.
+     */
+    static void benchmark(Machine machine, String setting, int length,
+                          int rounds) {
+        Alphabet alphabet = machine.alphabet();
+        Random random = new Random(length);
+        char[] message = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            message[i] = alphabet.toChar(random.nextInt(alphabet.size()));
+        }
+        String[] labels = { "interpreter", "kernel", "flat" };
+        char[][] results = new char[labels.length][];
+        for (int kind = 0; kind < labels.length; kind += 1) {
+            machine.useKernels(kind == 1);
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r += 1) {
+                char[] buf = message.clone();
+                Main.setUp(machine, setting);
+                FlatMachine flat = new FlatMachine(machine);
+                long start = System.nanoTime();
+                if (kind == 2) {
+                    flat.convert(buf, 0, buf.length);
+                } else {
+                    machine.convert(buf, 0, buf.length);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                results[kind] = buf;
+            }
+            System.out.printf("%-12s %12.0f chars/s%n", labels[kind],
+                              length * NANOS_PER_SEC / Math.max(1, best));
+            if (kind == 1 && machine.kernel() == null) {
+                System.out.println("(kernels unavailable: the kernel run "
+                                   + "used the interpreter)");
+            }
+            if (!Arrays.equals(results[0], results[kind])) {
+                throw error("%s and interpreter disagree", labels[kind]);
+            }
+        }
+    }
+
+    /**
+     * Return a kernel for the current setup of MACHINE, or null if
+     * kernels cannot be defined on this platform.
+     */
+    static Kernel generate(Machine machine) {
+        byte[] template = template();
+        if (template == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(template,
+                                                classData(machine), true);
+            return (Kernel) lookup.lookupClass().getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the class data describing the current setup of MACHINE.
+     */
+    static Object[] classData(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        Rotor[] slots = Stepping.slots(machine);
+        int n = slots.length;
+        Stepping stepping = new Stepping(alphabet, slots);
+        Wiring wiring = new Wiring(slots);
+        Permutation plugboard = machine.plugboard();
+        int[] plug = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            plug[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+
+        int[][] forward = new int[n][size * size];
+        int[][] backward = new int[n][size * size];
+        boolean[] rotates = new boolean[n];
+        boolean[] reflecting = new boolean[n];
+        boolean[] notch = new boolean[n * size];
+        for (int k = 0; k < n; k += 1) {
+            rotates[k] = stepping.rotates(k);
+            reflecting[k] = stepping.reflecting(k);
+            for (int p = 0; p < size; p += 1) {
+                notch[k * size + p] = stepping.atNotch(k, p);
+                int offset = Math.floorMod(p - slots[k].optional(), size);
+                for (int c = 0; c < size; c += 1) {
+                    int in = k == n - 1 ? plug[c] : c;
+                    forward[k][p * size + c] =
+                        wiring.through(wiring.forward(k), offset, in);
+                    int out =
+                        wiring.through(wiring.backward(k), offset, c);
+                    backward[k][p * size + c] = k == n - 1 ? plug[out] : out;
+                }
+            }
+        }
+
+        char[] chars = new char[size];
+        int max = 0;
+        for (int c = 0; c < size; c += 1) {
+            chars[c] = alphabet.toChar(c);
+            max = Math.max(max, chars[c]);
+        }
+        int[] index = new int[max + 1];
+        Arrays.fill(index, -1);
+        for (int c = 0; c < size; c += 1) {
+            index[chars[c]] = c;
+        }
+
+        Object[] data = new Object[DATA_LENGTH];
+        data[SIZE] = size;
+        data[SLOTS] = n;
+        data[FORWARD] = forward;
+        data[BACKWARD] = backward;
+        data[ROTATES] = rotates;
+        data[REFLECTING] = reflecting;
+        data[NOTCH] = notch;
+        data[CHARS] = chars;
+        data[INDEX] = index;
+        return data;
+    }
+
+    /**
+     * Return the bytes of the class file of KernelTemplate, or null if
+     * they cannot be read.
+     */
+    private static synchronized byte[] template() {
+        if (_template == null) {
+            try (InputStream in = Kernels.class.getResourceAsStream(
+                     "KernelTemplate.class")) {
+                if (in != null) {
+                    _template = in.readAllBytes();
+                }
+            } catch (IOException excp) {
+                _template = null;
+            }
+        }
+        return _template;
+    }
+
+    /**
+     * Index of the alphabet size in the class data.
+     */
+    static final int SIZE = 0;
+    /**
+     * Index of the number of slots in the class data.
+     */
+    static final int SLOTS = 1;
+    /**
+     * Index of the forward tables in the class data.
+     */
+    static final int FORWARD = 2;
+    /**
+     * Index of the backward tables in the class data.
+     */
+    static final int BACKWARD = 3;
+    /**
+     * Index of the rotating slots in the class data.
+     */
+    static final int ROTATES = 4;
+    /**
+     * Index of the reflecting slots in the class data.
+     */
+    static final int REFLECTING = 5;
+    /**
+     * Index of the notch table in the class data.
+     */
+    static final int NOTCH = 6;
+    /**
+     * Index of the alphabet's characters in the class data.
+     */
+    static final int CHARS = 7;
+    /**
+     * Index of the character index table in the class data.
+     */
+    static final int INDEX = 8;
+    /**
+     * Length of the class data.
+     */
+    private static final int DATA_LENGTH = 9;
+
+    /**
+     * Default benchmark message length.
+     */
+    private static final int DEFAULT_LENGTH = 1 << 20;
+    /**
+     * Default number of benchmark rounds.
+     */
+    private static final int DEFAULT_ROUNDS = 10;
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SEC = 1e9;
+
+    /**
+     * Bytes of the class file of KernelTemplate, once read.
+     */
+    private static byte[] _template;
+}
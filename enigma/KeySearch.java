@@ -0,0 +1,549 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A search of the key space of a machine (rotor orders, rotor settings
+ * and, optionally, ring settings; see KeySpace) for the keys that best
+ * decrypt a ciphertext, spread over several worker processes on this
+ * host.  The coordinator divides the key space into work units (shards
+ * of KeySpace) and hands them out over loopback sockets to workers (see
+ * SearchWorker), which each run in their own JVM, and so with their own
+ * heap and collector.
+ * <p>
+ * Units are handed out one at a time, so that a worker takes a new one
+ * as soon as it is idle.  When no unit is left to hand out, an idle
+ * worker steals the unit that has been running longest: it searches it
+ * too, and whichever result arrives first is kept.  A unit whose
+ * worker is lost goes back to be handed out again.  The best candidates
+ * of all units are merged into one ranking.
+ * <p>
+ * Completed units may be checkpointed to a file: a header identifying
+ * the search, then one line per unit holding its number and its
+ * candidates, appended and synced as each unit completes.  A search
+ * started with the checkpoint of an interrupted one skips the units it
+ * records, and first cuts off any line left unfinished.
+ *
+ * @author taiga
+ */
+public final class KeySearch {
+
+    /**
+     * Search the key space of the configuration named by ARGS[0] for
+     * the keys that best decrypt the ciphertext in the file ARGS[1],
+     * and print the best with their scores.  Options: --workers=N, the
+     * number of worker processes (default the number of processors);
+     * --units=N, the number of work units (default 1024); --top=N, the
+     * number of keys printed (default 10); --crib=TEXT, known plaintext
+     * at the start of the message; --rings, to search ring settings
+     * too; and --checkpoint=FILE.  With --worker=PORT, run as a worker
+     * for the coordinator listening on PORT.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workers=(\\d+) --units=(\\d+) "
+                                + "--top=(\\d+) --crib=(.+) --rings "
+                                + "--checkpoint=(.+) --worker=(\\d+) "
+                                + "--=(.*){2,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySearch [--workers=N] "
+                            + "[--units=N] [--top=N] [--crib=TEXT] "
+                            + "[--rings] [--checkpoint=FILE] "
+                            + "CONFIG CIPHERTEXT");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.loadConfig(files.get(0));
+            KeySpace keys = new KeySpace(machine, options.contains("--rings"));
+            String text = readText(files.get(1), machine.alphabet());
+            String crib = options.contains("--crib")
+                ? options.getLast("--crib") : "";
+            SearchWorker worker = new SearchWorker(machine, keys, text, crib);
+            if (options.contains("--worker")) {
+                int port = option(options, "--worker", 0);
+                try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    worker.serve(socket);
+                }
+                return;
+            }
+
+            int units = option(options, "--units", DEFAULT_UNITS);
+            int top = option(options, "--top", DEFAULT_TOP);
+            File checkpoint = options.contains("--checkpoint")
+                ? new File(options.getLast("--checkpoint")) : null;
+            KeySearch search =
+                new KeySearch(keys.size(), units, top,
+                              id(keys, units, top, text, crib), checkpoint);
+            try {
+                if (search.remaining() > 0) {
+                    List<String> command = new ArrayList<>();
+                    for (String arg : args) {
+                        if (!arg.startsWith("--workers=")) {
+                            command.add(arg);
+                        }
+                    }
+                    search.run(option(options, "--workers",
+                                      Runtime.getRuntime()
+                                      .availableProcessors()),
+                               command);
+                }
+            } finally {
+                search.close();
+            }
+            if (search.remaining() > 0) {
+                throw error("workers exited with %d units unsearched",
+                            search.remaining());
+            }
+            for (Candidates.Candidate c : search.results().ranked()) {
+                System.out.printf("%.6f %s%n", c.score(),
+                                  keys.setting(c.key()));
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the value of integer option NAME in OPTIONS, or DEFLT.
+     */
+    private static int option(CommandArgs options, String name, int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        try {
+            return Integer.parseInt(options.getLast(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /**
+     * Return the string identifying in its checkpoint a search of KEYS
+     * divided into UNITS units, keeping the TOP best candidates, for the
+     * keys that best decrypt TEXT with crib CRIB.  It names the rotors
+     * and whether ring settings are searched, so that the checkpoint of
+     * a search of another configuration is not taken for it.
+     */
+    static String id(KeySpace keys, int units, int top, String text,
+                     String crib) {
+        StringBuilder rotors = new StringBuilder();
+        for (Rotor rotor : keys.orders().rotors()) {
+            rotors.append(rotors.length() == 0 ? "" : ",")
+                .append(rotor.name());
+        }
+        return String.format("%d %d %d %s %s %08x", keys.size(), units, top,
+                             rotors, keys.rings() > 1 ? "rings" : "-",
+                             (text + "/" + crib).hashCode());
+    }
+
+    /**
+     * Return the contents of the file named NAME without whitespace,
+     * checking that the rest is in ALPHABET.
+     */
+    private static String readText(String name, Alphabet alphabet)
+        throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(name)),
+                                 StandardCharsets.ISO_8859_1)
+            .replaceAll("\\s+", "");
+        for (int i = 0; i < text.length(); i += 1) {
+            if (!alphabet.contains(text.charAt(i))) {
+                throw error("%c is not in the alphabet", text.charAt(i));
+            }
+        }
+        return text;
+    }
+
+    /**
+     * A search of KEYS keys divided into UNITS work units, keeping the
+     * TOP best candidates.  ID identifies the search in CHECKPOINT,
+     * which records completed units, or is null for no checkpoint.
+     * The units recorded in an existing CHECKPOINT are not searched
+     * again.
+     */
+    KeySearch(long keys, int units, int top, String id, File checkpoint)
+        throws IOException {
+        if (units <= 0 || units > keys) {
+            throw error("bad number of units %d", units);
+        }
+        _units = units;
+        _top = top;
+        _results = new Candidates(top);
+        _done = new boolean[units];
+        _holders = new int[units];
+        _started = new long[units];
+        _remaining = units;
+        String header = HEADER + id;
+        long kept = 0;
+        if (checkpoint != null && checkpoint.length() > 0) {
+            kept = readCheckpoint(checkpoint, header);
+        }
+        for (int u = 0; u < units; u += 1) {
+            if (!_done[u]) {
+                _pending.add(u);
+            }
+        }
+        if (checkpoint != null) {
+            try (RandomAccessFile file =
+                 new RandomAccessFile(checkpoint, "rw")) {
+                file.setLength(kept);
+            }
+            _log = new FileOutputStream(checkpoint, true);
+            if (kept == 0) {
+                log(header);
+            }
+        }
+    }
+
+    /**
+     * Record in me the units completed according to CHECKPOINT, whose
+     * first line must be HEADER, and return the length in bytes of the
+     * part of it I used.  Only lines ending in a newline count: a
+     * malformed line, or one cut short when a search was killed, ends
+     * the checkpoint, and the caller cuts it off before appending.
+     * Returns 0 if even the header was cut short.
+     */
+    private long readCheckpoint(File checkpoint, String header)
+        throws IOException {
+        String text = new String(Files.readAllBytes(checkpoint.toPath()),
+                                 StandardCharsets.ISO_8859_1);
+        int end = text.indexOf('\n');
+        if (end < 0 && header.startsWith(text)) {
+            return 0;
+        }
+        if (end < 0 || !header.equals(text.substring(0, end))) {
+            throw error("%s is the checkpoint of another search",
+                        checkpoint);
+        }
+        int kept = end + 1;
+        for (end = text.indexOf('\n', kept); end >= 0;
+             end = text.indexOf('\n', kept)) {
+            String line = text.substring(kept, end);
+            try {
+                int space = line.indexOf(' ');
+                int unit = Integer.parseInt(
+                    space < 0 ? line : line.substring(0, space));
+                Candidates found = Candidates.parse(
+                    space < 0 ? "" : line.substring(space), _top);
+                if (unit < 0 || unit >= _units) {
+                    break;
+                }
+                if (!_done[unit]) {
+                    _done[unit] = true;
+                    _remaining -= 1;
+                    _results.addAll(found);
+                }
+            } catch (NumberFormatException | EnigmaException excp) {
+                break;
+            }
+            kept = end + 1;
+        }
+        return kept;
+    }
+
+    /**
+     * Run WORKERS worker processes, each given the arguments ARGS with
+     * --worker=PORT added, and serve them until they have all exited.
+     */
+    private void run(int workers, List<String> args) throws IOException {
+        if (workers <= 0) {
+            throw error("bad number of workers %d", workers);
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        try (ServerSocket socket =
+             new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            Thread server = new Thread(() -> serve(socket), "search-server");
+            server.setDaemon(true);
+            server.start();
+            List<Process> processes = new ArrayList<>();
+            for (int w = 0; w < workers; w += 1) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(KeySearch.class.getName());
+                command.add("--worker=" + socket.getLocalPort());
+                command.addAll(args);
+                processes.add(new ProcessBuilder(command).inheritIO()
+                              .start());
+            }
+            for (Process process : processes) {
+                while (true) {
+                    try {
+                        process.waitFor();
+                        break;
+                    } catch (InterruptedException excp) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Accept workers on SOCKET, serving each on its own thread, until
+     * SOCKET is closed.
+     */
+    void serve(ServerSocket socket) {
+        try {
+            while (!socket.isClosed()) {
+                Thread handler =
+                    new Thread(new Handler(socket.accept()), "search-worker");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException excp) {
+            /* Socket closed: the search has ended. */
+        }
+    }
+
+    /**
+     * Return the number of units not yet completed.
+     */
+    synchronized int remaining() {
+        return _remaining;
+    }
+
+    /**
+     * Return the number of units handed to a second worker.
+     */
+    synchronized int stolen() {
+        return _stolen;
+    }
+
+    /**
+     * Return the merged candidates of the completed units.
+     */
+    synchronized Candidates results() {
+        Candidates result = new Candidates(_top);
+        result.addAll(_results);
+        return result;
+    }
+
+    /**
+     * Wait until all units are completed.
+     */
+    synchronized void awaitFinished() throws InterruptedException {
+        while (_remaining > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Return the next unit for an idle worker, waiting while none is
+     * available, or -1 when all are completed.
+     */
+    private synchronized int take() throws InterruptedException {
+        while (_remaining > 0) {
+            Integer unit = _pending.poll();
+            if (unit != null) {
+                _holders[unit] += 1;
+                _started[unit] = System.nanoTime();
+                return unit;
+            }
+            int steal = -1;
+            for (int u = 0; u < _units; u += 1) {
+                if (!_done[u] && _holders[u] == 1
+                    && (steal < 0 || _started[u] < _started[steal])) {
+                    steal = u;
+                }
+            }
+            if (steal >= 0) {
+                _holders[steal] += 1;
+                _stolen += 1;
+                return steal;
+            }
+            wait();
+        }
+        return -1;
+    }
+
+    /**
+     * Record that a worker searched UNIT and FOUND its best candidates.
+     */
+    private synchronized void complete(int unit, Candidates found)
+        throws IOException {
+        _holders[unit] -= 1;
+        if (!_done[unit]) {
+            _done[unit] = true;
+            _remaining -= 1;
+            _results.addAll(found);
+            if (_log != null) {
+                log(unit + " " + found);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Record that the worker searching UNIT was lost.
+     */
+    private synchronized void release(int unit) {
+        _holders[unit] -= 1;
+        if (!_done[unit] && _holders[unit] == 0) {
+            _pending.addFirst(unit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Append LINE to the checkpoint and sync it to the disk.
+     */
+    private void log(String line) throws IOException {
+        _log.write((line + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        _log.getFD().sync();
+    }
+
+    /**
+     * Close the checkpoint, if any.
+     */
+    synchronized void close() throws IOException {
+        if (_log != null) {
+            _log.close();
+            _log = null;
+        }
+    }
+
+    /**
+     * The coordinator's end of the connection to one worker.
+     */
+    private class Handler implements Runnable {
+
+        /**
+         * Serves the worker on SOCKET.
+         */
+        Handler(Socket socket) {
+            _socket = socket;
+        }
+
+        @Override
+        public void run() {
+            int unit = -1;
+            try (Socket socket = _socket;
+                 BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(),
+                                           StandardCharsets.ISO_8859_1));
+                 Writer out = new OutputStreamWriter(
+                     socket.getOutputStream(),
+                     StandardCharsets.ISO_8859_1)) {
+                if (!"READY".equals(in.readLine())) {
+                    return;
+                }
+                while (true) {
+                    unit = take();
+                    if (unit < 0) {
+                        out.write("QUIT\n");
+                        out.flush();
+                        return;
+                    }
+                    out.write("UNIT " + unit + " " + _units + " " + _top
+                              + "\n");
+                    out.flush();
+                    String line = in.readLine();
+                    String prefix = "DONE " + unit;
+                    if (line == null || !line.startsWith(prefix)) {
+                        return;
+                    }
+                    Candidates found = Candidates.parse(
+                        line.substring(prefix.length()), _top);
+                    int completed = unit;
+                    unit = -1;
+                    complete(completed, found);
+                }
+            } catch (IOException | EnigmaException excp) {
+                /* Worker lost. */
+                return;
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (unit >= 0) {
+                    release(unit);
+                }
+            }
+        }
+
+        /**
+         * Connection to the worker.
+         */
+        private final Socket _socket;
+    }
+
+    /**
+     * Default number of work units.
+     */
+    static final int DEFAULT_UNITS = 1024;
+    /**
+     * Default number of candidates printed.
+     */
+    static final int DEFAULT_TOP = 10;
+    /**
+     * Start of the first line of a checkpoint.
+     */
+    private static final String HEADER = "# enigma.KeySearch ";
+
+    /**
+     * # work units.
+     */
+    private final int _units;
+    /**
+     * # candidates kept.
+     */
+    private final int _top;
+    /**
+     * Best candidates of the completed units.
+     */
+    private final Candidates _results;
+    /**
+     * Units not yet handed out, or given back by lost workers.
+     */
+    private final ArrayDeque<Integer> _pending = new ArrayDeque<>();
+    /**
+     * Completed units.
+     */
+    private final boolean[] _done;
+    /**
+     * # workers searching each unit.
+     */
+    private final int[] _holders;
+    /**
+     * Time each unit was first handed out, from System.nanoTime().
+     */
+    private final long[] _started;
+    /**
+     * # units not yet completed.
+     */
+    private int _remaining;
+    /**
+     * # units handed to a second worker.
+     */
+    private int _stolen;
+    /**
+     * Checkpoint being appended to, or null.
+     */
+    private FileOutputStream _log;
+}
@@ -0,0 +1,236 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for KeySearch, SearchWorker and
+ * Candidates.
+ *
+ * @author taiga
+ */
+public class KeySearchTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a three-rotor machine with rotors I, II, III and
+     * reflector B.
+     */
+    private Machine machine() {
+        return navalMachine(4, 3, "I", "II", "III", "B");
+    }
+
+    /**
+     * The first failure of a worker thread, if any.
+     */
+    private final AtomicReference<Throwable> _workerFailure =
+        new AtomicReference<>();
+
+    /**
+     * Return a worker thread searching CIPHERTEXT with CRIB for the
+     * coordinator on PORT, with a machine of its own.  Its failure is
+     * recorded in _workerFailure.
+     */
+    private Thread worker(int port, String ciphertext, String crib) {
+        Machine mach = machine();
+        SearchWorker worker =
+            new SearchWorker(mach, new KeySpace(mach, false), ciphertext,
+                             crib);
+        Thread result = new Thread(() -> {
+            try (Socket socket =
+                 new Socket(InetAddress.getLoopbackAddress(), port)) {
+                worker.serve(socket);
+            } catch (Throwable excp) {
+                _workerFailure.compareAndSet(null, excp);
+            }
+        });
+        result.start();
+        return result;
+    }
+
+    /**
+     * Run SEARCH with two worker threads searching CIPHERTEXT with CRIB
+     * until it is finished, and close it.  Rethrows the failure of
+     * either worker.
+     */
+    private void run(KeySearch search, String ciphertext, String crib)
+        throws Exception {
+        try (ServerSocket socket =
+             new ServerSocket(0, 2, InetAddress.getLoopbackAddress())) {
+            new Thread(() -> search.serve(socket)).start();
+            Thread w1 = worker(socket.getLocalPort(), ciphertext, crib);
+            Thread w2 = worker(socket.getLocalPort(), ciphertext, crib);
+            search.awaitFinished();
+            w1.join();
+            w2.join();
+        }
+        search.close();
+        Throwable failure = _workerFailure.get();
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw (Exception) failure;
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCandidates() {
+        Candidates c = new Candidates(3);
+        c.offer(10, 0.5);
+        c.offer(11, 0.9);
+        c.offer(12, 0.1);
+        c.offer(13, 0.5);
+        c.offer(9, 0.5);
+        List<Candidates.Candidate> ranked = c.ranked();
+        assertEquals(3, ranked.size());
+        assertEquals(11, ranked.get(0).key());
+        assertEquals(9, ranked.get(1).key());
+        assertEquals(10, ranked.get(2).key());
+
+        Candidates other = Candidates.parse(c.toString(), 3);
+        assertEquals(c.toString(), other.toString());
+        Candidates merged = Candidates.parse("13:0.95 14:0.05", 3);
+        merged.addAll(c);
+        assertEquals("13:0.95 11:0.9 9:0.5", merged.toString());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Machine mach = machine();
+        Main.setUp(mach, "B II I III QRS");
+        long expected = new KeySpace(mach, false).key(mach);
+        String plain = "WEATHERREPORTFOLLOWSNOCHANGEINTHESECTOR";
+        String ciphertext = mach.convert(plain);
+        String crib = plain.substring(0, 13);
+        long keys = new KeySpace(machine(), false).size();
+
+        File checkpoint = File.createTempFile("search", ".ckpt");
+        checkpoint.delete();
+        try {
+            KeySearch search =
+                new KeySearch(keys, 16, 3, "test", checkpoint);
+            run(search, ciphertext, crib);
+            List<Candidates.Candidate> best = search.results().ranked();
+            assertEquals(3, best.size());
+            assertEquals(1.0, best.get(0).score(), 0.0);
+            /* Keys that double-step into the true key's state at the
+             * first character score as well as it does. */
+            boolean found = false;
+            for (Candidates.Candidate c : best) {
+                found |= c.key() == expected && c.score() == 1.0;
+            }
+            assertTrue("true key not found", found);
+
+            KeySearch resumed =
+                new KeySearch(keys, 16, 3, "test", checkpoint);
+            resumed.close();
+            assertEquals(0, resumed.remaining());
+            assertEquals(search.results().toString(),
+                         resumed.results().toString());
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    @Test
+    public void testTruncatedCheckpoint() throws Exception {
+        Machine mach = machine();
+        Main.setUp(mach, "B III II I AZF");
+        String ciphertext = mach.convert("ATTACKATDAWNALONGTHERIVER");
+        String crib = "ATTACK";
+        long keys = new KeySpace(machine(), false).size();
+
+        File checkpoint = File.createTempFile("search", ".ckpt");
+        try {
+            new KeySearch(keys, 8, 3, "test", checkpoint).close();
+            String header =
+                new String(Files.readAllBytes(checkpoint.toPath()),
+                           StandardCharsets.ISO_8859_1);
+            Files.write(checkpoint.toPath(),
+                        (header + "0 5:0.5\n1 6:0.25\n4 9:0.9 11:0.")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+
+            KeySearch first = new KeySearch(keys, 8, 3, "test", checkpoint);
+            assertEquals(6, first.remaining());
+            first.close();
+            assertEquals(header + "0 5:0.5\n1 6:0.25\n",
+                         new String(Files.readAllBytes(checkpoint.toPath()),
+                                    StandardCharsets.ISO_8859_1));
+
+            KeySearch second =
+                new KeySearch(keys, 8, 3, "test", checkpoint);
+            assertEquals(6, second.remaining());
+            run(second, ciphertext, crib);
+            assertEquals(0, second.remaining());
+
+            List<String> lines =
+                Files.readAllLines(checkpoint.toPath(),
+                                   StandardCharsets.ISO_8859_1);
+            assertEquals(9, lines.size());
+            for (String line : lines.subList(1, lines.size())) {
+                assertTrue(line, line.matches("\\d+( \\d+:\\S+)*"));
+            }
+            KeySearch third = new KeySearch(keys, 8, 3, "test", checkpoint);
+            third.close();
+            assertEquals(0, third.remaining());
+            assertEquals(second.results().toString(),
+                         third.results().toString());
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    @Test
+    public void testSearchId() {
+        KeySpace keys = new KeySpace(machine(), false);
+        KeySpace other =
+            new KeySpace(navalMachine(4, 3, "I", "II", "IV", "B"), false);
+        KeySpace rings = new KeySpace(machine(), true);
+        assertEquals(keys.size(), other.size());
+        String id = KeySearch.id(keys, 16, 3, "TEXT", "");
+        assertEquals(id, KeySearch.id(new KeySpace(machine(), false), 16, 3,
+                                      "TEXT", ""));
+        assertNotEquals(id, KeySearch.id(other, 16, 3, "TEXT", ""));
+        assertNotEquals(id, KeySearch.id(rings, 16, 3, "TEXT", ""));
+    }
+
+    @Test
+    public void testCheckpointMismatch() throws IOException {
+        File checkpoint = File.createTempFile("search", ".ckpt");
+        try {
+            new KeySearch(100, 4, 3, "one", checkpoint).close();
+            try {
+                new KeySearch(100, 4, 3, "two", checkpoint);
+                fail("checkpoint of another search accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            checkpoint.delete();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The space of keys of a Machine: a rotor order (see RotorOrders), the
+ * settings of the rotors in slots 1 .. numRotors()-1 and, optionally,
+ * their ring settings.  Keys are numbered from 0 as
+ * (order * positions() + position) * rings() + ring, the leftmost slot
+ * being the most significant digit of a position or ring, so that a key
+ * is a single long and ranges of keys are cheap to enumerate, split
+ * among threads, or shard among processes.
+ *
+ * @author taiga
+ */
+class KeySpace {
+
+    /**
+     * The key space of MACHINE, including ring settings iff RINGS.
+     */
+    KeySpace(Machine machine, boolean rings) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _orders = new RotorOrders(machine);
+        _numRotors = machine.numRotors();
+        try {
+            long positions = 1;
+            for (int k = 1; k < _numRotors; k += 1) {
+                positions = Math.multiplyExact(positions, _size);
+            }
+            _positions = positions;
+            _rings = rings ? positions : 1;
+            _keys = Math.multiplyExact(Math.multiplyExact(
+                (long) _orders.size(), _positions), _rings);
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /**
+     * Return the number of keys.
+     */
+    long size() {
+        return _keys;
+    }
+
+    /**
+     * Return the rotor orders enumerated.
+     */
+    RotorOrders orders() {
+        return _orders;
+    }
+
+    /**
+     * Return the number of rotor positions per rotor order.
+     */
+    long positions() {
+        return _positions;
+    }
+
+    /**
+     * Return the number of ring settings per position (1 if ring
+     * settings are not enumerated).
+     */
+    long rings() {
+        return _rings;
+    }
+
+    /**
+     * Return the rotor order of KEY.
+     */
+    int order(long key) {
+        return (int) (key / _rings / _positions);
+    }
+
+    /**
+     * Store into SETTINGS[1 .. numRotors()-1] the rotor settings of KEY.
+     */
+    void positions(long key, int[] settings) {
+        digits(key / _rings % _positions, settings);
+    }
+
+    /**
+     * Store into RINGS[1 .. numRotors()-1] the ring settings of KEY.
+     */
+    void rings(long key, int[] rings) {
+        digits(_rings == 1 ? 0 : key % _rings, rings);
+    }
+
+    /**
+     * Store the base-size digits of VALUE into DIGITS[1 .. numRotors()-1],
+     * the most significant first.
+     */
+    private void digits(long value, int[] digits) {
+        for (int k = _numRotors - 1; k > 0; k -= 1) {
+            digits[k] = (int) (value % _size);
+            value /= _size;
+        }
+    }
+
+    /**
+     * Return the setting line (without plugboard) of KEY.
+     */
+    String setting(long key) {
+        int[] digits = new int[_numRotors];
+        StringBuilder result =
+            new StringBuilder(String.join(" ", _orders.names(order(key))));
+        result.append(' ');
+        positions(key, digits);
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.append(_alphabet.toChar(digits[k]));
+        }
+        result.append(' ');
+        rings(key, digits);
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.append(_alphabet.toChar(digits[k]));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Set up MACHINE, which must be the machine I enumerate or a copy of
+     * it, with the rotors, settings and ring settings of KEY.  Its
+     * plugboard is left as it is.
+     */
+    void setUp(Machine machine, long key) {
+        String[] fields = setting(key).split(" ");
+        machine.insertRotors(Arrays.copyOf(fields, _numRotors));
+        machine.setRotors(fields[_numRotors], fields[_numRotors + 1]);
+    }
+
+    /**
+     * Return the key whose order, settings and ring settings are those
+     * of the current setup of MACHINE, or -1 if its rotor order is not
+     * one of mine or its ring settings are not all 0 and rings are not
+     * enumerated.  Rotors are matched by name, so that MACHINE may be a
+     * copy of the machine I enumerate.
+     */
+    long key(Machine machine) {
+        int[] slots = new int[_numRotors];
+        Rotor[] rotors = _orders.rotors();
+        for (int k = 0; k < _numRotors; k += 1) {
+            slots[k] = -1;
+            for (int i = 0; i < rotors.length; i += 1) {
+                if (rotors[i].name().equals(machine.getRotor(k).name())) {
+                    slots[k] = i;
+                }
+            }
+        }
+        for (int o = 0; o < _orders.size(); o += 1) {
+            if (Arrays.equals(_orders.get(o), slots)) {
+                long position = 0, ring = 0;
+                for (int k = 1; k < _numRotors; k += 1) {
+                    Rotor rotor = machine.getRotor(k);
+                    position = position * _size + rotor.setting();
+                    ring = ring * _size + rotor.optional();
+                }
+                if (ring >= _rings) {
+                    return -1;
+                }
+                return (o * _positions + position) * _rings + ring;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return a spliterator over all keys.
+     */
+    Spliterator.OfLong spliterator() {
+        return spliterator(0, _keys);
+    }
+
+    /**
+     * Return a spliterator over the keys FROM .. TO-1.
+     */
+    Spliterator.OfLong spliterator(long from, long to) {
+        if (from < 0 || to > _keys || from > to) {
+            throw error("key range %d .. %d out of bounds", from, to);
+        }
+        return new KeySpliterator(from, to);
+    }
+
+    /**
+     * Return a stream of all keys, parallel iff PARALLEL.
+     */
+    LongStream stream(boolean parallel) {
+        return StreamSupport.longStream(spliterator(), parallel);
+    }
+
+    /**
+     * Return a stream of the keys of shard #INDEX when the key space is
+     * divided into COUNT shards of sizes differing by at most one,
+     * parallel iff PARALLEL.
+     */
+    LongStream shard(int index, int count, boolean parallel) {
+        if (count <= 0 || index < 0 || index >= count) {
+            throw error("no shard %d of %d", index, count);
+        }
+        long from = shardStart(index, count);
+        long to = shardStart(index + 1, count);
+        return StreamSupport.longStream(spliterator(from, to), parallel);
+    }
+
+    /**
+     * Return the first key of shard #INDEX of COUNT.
+     */
+    private long shardStart(int index, int count) {
+        return _keys / count * index + Math.min(index, _keys % count);
+    }
+
+    /**
+     * A spliterator over a range of keys that splits in halves.
+     */
+    private static class KeySpliterator implements Spliterator.OfLong {
+
+        /**
+         * Iterates over keys FROM .. TO-1.
+         */
+        KeySpliterator(long from, long to) {
+            _next = from;
+            _end = to;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long end = _end;
+            for (long key = _next; key < end; key += 1) {
+                action.accept(key);
+            }
+            _next = end;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = _next + (_end - _next) / 2;
+            if (mid - _next < MIN_SPLIT) {
+                return null;
+            }
+            Spliterator.OfLong prefix = new KeySpliterator(_next, mid);
+            _next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | DISTINCT | SORTED
+                | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+
+        /**
+         * Next key.
+         */
+        private long _next;
+        /**
+         * End of my range.
+         */
+        private final long _end;
+    }
+
+    /**
+     * Smallest range split off by a spliterator.
+     */
+    private static final long MIN_SPLIT = 1 << 10;
+
+    /**
+     * Alphabet of the machine.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * # rotor slots.
+     */
+    private final int _numRotors;
+    /**
+     * Rotor orders enumerated.
+     */
+    private final RotorOrders _orders;
+    /**
+     * # positions per order.
+     */
+    private final long _positions;
+    /**
+     * # ring settings per position.
+     */
+    private final long _rings;
+    /**
+     * # keys.
+     */
+    private final long _keys;
+}
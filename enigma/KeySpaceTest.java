@@ -0,0 +1,86 @@
+package enigma;
+
+import java.util.Spliterator;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the KeySpace class.
+ *
+ * @author taiga
+ */
+public class KeySpaceTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a three-rotor machine with rotors I, II, III and
+     * reflector B.
+     */
+    private Machine machine() {
+        return navalMachine(4, 3, "I", "II", "III", "B");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSize() {
+        assertEquals(6L * 26 * 26 * 26, new KeySpace(machine(), false).size());
+        assertEquals(6L * 26 * 26 * 26 * 26 * 26 * 26,
+                     new KeySpace(machine(), true).size());
+    }
+
+    @Test
+    public void testSplitCoversAll() {
+        KeySpace keys = new KeySpace(machine(), false);
+        Spliterator.OfLong all = keys.spliterator();
+        Spliterator.OfLong prefix = all.trySplit();
+        assertNotNull(prefix);
+        assertEquals(keys.size(),
+                     prefix.estimateSize() + all.estimateSize());
+        assertEquals(keys.size(), keys.stream(true).distinct().count());
+        assertEquals(keys.size() * (keys.size() - 1) / 2,
+                     keys.stream(true).sum());
+    }
+
+    @Test
+    public void testShards() {
+        KeySpace keys = new KeySpace(machine(), false);
+        long total = 0;
+        for (int i = 0; i < 7; i += 1) {
+            long n = keys.shard(i, 7, false).count();
+            assertTrue(Math.abs(n - keys.size() / 7) <= 1);
+            total += n;
+        }
+        assertEquals(keys.size(), total);
+        assertEquals(keys.size() - 1,
+                     keys.shard(6, 7, false).max().getAsLong());
+    }
+
+    @Test
+    public void testSetUp() {
+        Machine mach = machine();
+        KeySpace keys = new KeySpace(mach, true);
+        long key = keys.size() / 3 + 12345;
+        keys.setUp(mach, key);
+        assertEquals(key, keys.key(mach));
+        assertEquals(keys.setting(key), mach.setting());
+
+        Machine copy = mach.copy();
+        assertEquals(key, keys.key(copy));
+        keys.setUp(copy, key + 1);
+        assertEquals(key + 1, keys.key(copy));
+    }
+}
@@ -1,6 +1,10 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +27,9 @@ class Machine {
         _pawls = pawls;
         _rotors = new Rotor[_numRotors];
         rotorArray = allRotors.toArray();
-
+        _coreTop = Math.max(0, _numRotors - 3);
+        _core = new int[alpha.size()];
+        _kernelPos = new int[_numRotors];
     }
 
     /**
@@ -56,22 +62,91 @@ class Machine {
         return _alphabet;
     }
 
+    /**
+     * Return all the rotors available to me, in the order I was given
+     * them.
+     */
+    Rotor[] allRotors() {
+        Rotor[] result = new Rotor[rotorArray.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (Rotor) rotorArray[i];
+        }
+        return result;
+    }
+
+    /**
+     * Return a new machine with my configuration, whose rotors are
+     * copies of mine sharing their permutations, with the same rotors
+     * inserted, settings, plugboard and registered snapshot plugboards as
+     * I have.  The copy and I can then be used independently.
+     */
+    Machine copy() {
+        Rotor[] rotors = allRotors();
+        Rotor[] copies = new Rotor[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            copies[i] = rotors[i].copy();
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     Arrays.asList(copies));
+        List<Rotor> originals = Arrays.asList(rotors);
+        for (int k = 0; k < _numRotors; k += 1) {
+            if (_rotors[k] != null) {
+                Rotor rotor = copies[originals.indexOf(_rotors[k])];
+                rotor.set(_rotors[k].setting());
+                rotor.setOptional(_rotors[k].optional());
+                result._rotors[k] = rotor;
+            }
+        }
+        result._plugboard = _plugboard;
+        if (_tables != null) {
+            result.useTables(_tables);
+        }
+        if (_slotGroups != null) {
+            result.layOutSnapshots();
+            result._plugboards.addAll(_plugboards);
+            result._plugboardIds.putAll(_plugboardIds);
+        }
+        return result;
+    }
+
+    /**
+     * Have my rotors convert through TABLES, the tables of allRotors()
+     * in order, or through their permutations if TABLES is null.
+     */
+    void useTables(RotorTables tables) {
+        Rotor[] rotors = allRotors();
+        if (tables != null && tables.count() != rotors.length) {
+            throw error("tables are not those of my rotors");
+        }
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i].setTables(tables, i);
+        }
+        _tables = tables;
+        setupChanged();
+    }
+
     /**
      * Set my rotor slots to the rotors named ROTORS from my set of
      * available rotors (ROTORS[0] names the reflector).
      * Initially, all rotors are set at their 0 setting.
      */
     void insertRotors(String[] rotors) {
+        if (rotors.length != numRotors()) {
+            throw new EnigmaException("There is no rotor for the name");
+        }
         for (int k = 0; k < rotors.length; k++) {
+            Rotor found = null;
             for (int i = 0; i < rotorArray.length; i++) {
                 if (((Rotor) rotorArray[i]).name().equals(rotors[k])) {
-                    _rotors[k] = (Rotor) rotorArray[i];
+                    found = (Rotor) rotorArray[i];
                 }
             }
+            if (found == null) {
+                throw error("There is no rotor named %s", rotors[k]);
+            }
+            _rotors[k] = found;
         }
-        if (rotors.length != numRotors()) {
-            throw new EnigmaException("There is no rotor for the name");
-        }
+        setupChanged();
         if (!_rotors[0].reflecting()) {
             throw new EnigmaException("The first rotor is not reflector");
         }
@@ -81,6 +156,7 @@ class Machine {
      * Set my rotors according to SETTING, which must be a string of
      * numRotors()-1 characters in my alphabet. The first letter refers
      * to the leftmost rotor setting (not counting the reflector) and OPTIONAL.
+     * If OPTIONAL is empty, the ring settings are all 0.
      */
     void setRotors(String setting, String optional) {
 
@@ -95,14 +171,17 @@ class Machine {
 
             if (_rotors[i + 1] != null) {
                 _rotors[i + 1].set(setting.charAt(i));
-                if (optional != "") {
+                if (!optional.isEmpty()) {
                     _rotors[i + 1].setOptional(optional.charAt(i));
+                } else {
+                    _rotors[i + 1].setOptional(0);
                 }
             } else {
                 throw new EnigmaException("rotor at the index is null");
             }
 
         }
+        setupChanged();
     }
 
     /**
@@ -112,40 +191,533 @@ class Machine {
         return _plugboard;
     }
 
+    /**
+     * Return the names of the rotors in my slots, left to right,
+     * separated by blanks.
+     */
+    String rotorNames() {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : _rotors) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(rotor.name());
+        }
+        return result.toString();
+    }
+
     /**
      * Set the plugboard to PLUGBOARD.
      */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        setupChanged();
+    }
+
+    /**
+     * Discard what was derived from my setup: the core table, the
+     * kernel, and whether my tape matches.
+     */
+    private void setupChanged() {
+        _coreDirty = true;
+        _kernel = null;
+        _tapeMatches = false;
+    }
+
+    /**
+     * Convert buffers with TAPE, where it matches my setup, or stop
+     * using a tape if TAPE is null.  A tape takes precedence over
+     * kernels and is not used while statistics are recorded or in
+     * verbose mode.
+     */
+    void attachTape(Tape tape) {
+        _tape = tape;
+        _tapeMatches = false;
+    }
+
+    /**
+     * Return the tape to use for converting a buffer, or null.
+     */
+    private Tape bulkTape() {
+        if (_tape == null || _stats != null || Main.verbose()) {
+            return null;
+        }
+        if (!_tapeMatches) {
+            _tapeMatches = _tape.key().equals(Tape.key(this));
+        }
+        return _tapeMatches ? _tape : null;
+    }
+
+    /**
+     * If ON, convert buffers with a kernel generated for each setup (see
+     * Kernels) rather than rotor by rotor.  Kernels are not used while
+     * statistics are recorded or in verbose mode, nor where they cannot
+     * be generated.
+     */
+    void useKernels(boolean on) {
+        _useKernels = on;
+    }
+
+    /**
+     * Return the kernel for my current setup, generating it if needed,
+     * or null if kernels are not in use or cannot be generated.
+     */
+    Kernel kernel() {
+        if (!_useKernels) {
+            return null;
+        }
+        if (_kernel == null) {
+            String key = kernelKey();
+            _kernel = _kernels.get(key);
+            if (_kernel == null) {
+                _kernel = Kernels.generate(this);
+                if (_kernel == null) {
+                    _useKernels = false;
+                    return null;
+                }
+                if (_kernels.size() >= MAX_KERNELS) {
+                    _kernels.clear();
+                }
+                _kernels.put(key, _kernel);
+            }
+        }
+        return _kernel;
+    }
+
+    /**
+     * Return a string identifying my current setup apart from the rotor
+     * settings: the rotors in my slots, their ring settings and my
+     * plugboard.
+     */
+    private String kernelKey() {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : _rotors) {
+            result.append(rotor.name()).append(' ');
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.append(_alphabet.toChar(_rotors[k].optional()));
+        }
+        return result.append(plugboardKey(_plugboard)).toString();
+    }
+
+    /**
+     * Return the kernel to use for converting a buffer, or null to
+     * convert rotor by rotor.
+     */
+    private Kernel bulkKernel() {
+        if (!_useKernels || _stats != null || Main.verbose()) {
+            return null;
+        }
+        return kernel();
+    }
+
+    /**
+     * Copy my rotor settings into _kernelPos.
+     */
+    private void loadKernelPositions() {
+        for (int k = 0; k < _numRotors; k += 1) {
+            _kernelPos[k] = _rotors[k].setting();
+        }
+    }
+
+    /**
+     * Set my rotors to the settings in _kernelPos.
+     */
+    private void storeKernelPositions() {
+        setPositions(_kernelPos);
+    }
+
+    /**
+     * Set the rotors in my slots 1 .. numRotors()-1 to the settings
+     * POS[1 .. numRotors()-1], leaving their ring settings alone.
+     */
+    void setPositions(int[] pos) {
+        for (int k = 1; k < _numRotors; k += 1) {
+            _rotors[k].set(pos[k]);
+        }
+        _coreDirty = true;
+    }
+
+    /**
+     * Return true iff my current state can be packed by snapshot(): the
+     * snapshot layout fits in a long, each slot holds a rotor of the
+     * kind expected there (reflector, non-moving, or moving for the
+     * numPawls() rightmost slots), and my plugboard is registered or
+     * there is room to register it.
+     */
+    boolean canSnapshot() {
+        if (!canPackRotors() || _plugboardBits <= 0) {
+            return false;
+        }
+        return _plugboardIds.containsKey(plugboardKey(_plugboard))
+            || _plugboards.size() < (1L << _plugboardBits);
+    }
+
+    /**
+     * Return true iff the rotors in my slots, their settings and ring
+     * settings can be packed by packRotors(): the rotor part of the
+     * snapshot layout fits in a long and each slot holds a rotor of the
+     * kind expected there.
+     */
+    boolean canPackRotors() {
+        if (_slotGroups == null) {
+            layOutSnapshots();
+        }
+        if (_plugboardBits < 0) {
+            return false;
+        }
+        for (int k = 0; k < _numRotors; k += 1) {
+            if (_rotors[k] == null || groupIndex(k, _rotors[k]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return my current state (the rotors in my slots, their settings and
+     * ring settings, and my plugboard) packed into a long, to be given to
+     * restore().  Plugboards are registered with me and identified in the
+     * snapshot by number; snapshots are only meaningful to me and to
+     * machines copied from me after they were taken.
+     */
+    long snapshot() {
+        if (!canSnapshot()) {
+            throw error("machine state does not fit in a snapshot");
+        }
+        String key = plugboardKey(_plugboard);
+        Integer id = _plugboardIds.get(key);
+        if (id == null) {
+            id = _plugboards.size();
+            _plugboards.add(_plugboard);
+            _plugboardIds.put(key, id);
+        }
+        return packRotors() | (long) id << _rotorBits;
+    }
+
+    /**
+     * Return the rotors in my slots, their settings and ring settings
+     * packed into a long, as in snapshot() but without my plugboard,
+     * which is not registered.  The result is to be given to
+     * restore(long, Permutation) together with the plugboard.
+     */
+    long packRotors() {
+        if (!canPackRotors()) {
+            throw error("machine state does not fit in a snapshot");
+        }
+        long result = 0;
+        int shift = 0;
+        for (int k = 0; k < _numRotors; k += 1) {
+            result |= (long) groupIndex(k, _rotors[k]) << shift;
+            shift += _slotBits[k];
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            result |= (long) _rotors[k].setting() << shift;
+            shift += _positionBits;
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            result |= (long) _rotors[k].optional() << shift;
+            shift += _positionBits;
+        }
+        return result;
+    }
+
+    /**
+     * Restore the state packed into SNAPSHOT by snapshot().
+     */
+    void restore(long snapshot) {
+        long id = unpackRotors(snapshot);
+        if (id >= _plugboards.size()) {
+            throw error("unknown plugboard in snapshot");
+        }
+        _plugboard = _plugboards.get((int) id);
+        setupChanged();
+    }
+
+    /**
+     * Restore the rotors packed into PACKED by packRotors(), and set my
+     * plugboard to PLUGBOARD.
+     */
+    void restore(long packed, Permutation plugboard) {
+        unpackRotors(packed);
+        _plugboard = plugboard;
+        setupChanged();
+    }
+
+    /**
+     * Put the rotors packed into the low bits of PACKED in my slots, with
+     * their settings and ring settings, and return the remaining high
+     * bits.
+     */
+    private long unpackRotors(long packed) {
+        if (_slotGroups == null) {
+            layOutSnapshots();
+        }
+        long positionMask = (1L << _positionBits) - 1;
+        for (int k = 0; k < _numRotors; k += 1) {
+            long slotMask = (1L << _slotBits[k]) - 1;
+            _rotors[k] = _slotGroups[k][(int) (packed & slotMask)];
+            packed >>>= _slotBits[k];
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            _rotors[k].set((int) (packed & positionMask));
+            packed >>>= _positionBits;
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            _rotors[k].setOptional((int) (packed & positionMask));
+            packed >>>= _positionBits;
+        }
+        return packed;
+    }
+
+    /**
+     * Return the number of plugboards registered by snapshot().
+     */
+    int snapshotPlugboards() {
+        return _plugboards == null ? 0 : _plugboards.size();
+    }
+
+    /**
+     * Return a setting line which, given to Main.setUp, puts me in my
+     * current state.  It can be used to checkpoint my state durably.
+     */
+    String setting() {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : _rotors) {
+            result.append(rotor.name()).append(' ');
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.append(_alphabet.toChar(_rotors[k].setting()));
+        }
+        result.append(' ');
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.append(_alphabet.toChar(_rotors[k].optional()));
+        }
+        if (_plugboard != null && !_plugboard.cycles().isEmpty()) {
+            result.append(' ').append(_plugboard.cycles());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Compute the snapshot layout: the rotors each slot may hold and the
+     * bits used for each field.
+     */
+    private void layOutSnapshots() {
+        Rotor[] rotors = allRotors();
+        _slotGroups = new Rotor[_numRotors][];
+        _slotBits = new int[_numRotors];
+        _positionBits = bitsFor(_alphabet.size());
+        int used = 2 * (_numRotors - 1) * _positionBits;
+        for (int k = 0; k < _numRotors; k += 1) {
+            List<Rotor> group = new ArrayList<>();
+            for (Rotor rotor : rotors) {
+                boolean fits;
+                if (k == 0) {
+                    fits = rotor.reflecting();
+                } else if (k < _numRotors - _pawls) {
+                    fits = !rotor.rotates() && !rotor.reflecting();
+                } else {
+                    fits = rotor.rotates();
+                }
+                if (fits) {
+                    group.add(rotor);
+                }
+            }
+            _slotGroups[k] = group.toArray(new Rotor[0]);
+            _slotBits[k] = bitsFor(group.size());
+            used += _slotBits[k];
+        }
+        _rotorBits = used;
+        _plugboardBits = Math.min(Long.SIZE - used, MAX_PLUGBOARD_BITS);
+        _plugboards = new ArrayList<>();
+        _plugboardIds = new HashMap<>();
+    }
+
+    /**
+     * Return the index of ROTOR among the rotors slot K may hold, or -1.
+     */
+    private int groupIndex(int k, Rotor rotor) {
+        Rotor[] group = _slotGroups[k];
+        for (int i = 0; i < group.length; i += 1) {
+            if (group[i] == rotor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return a string identifying the mapping performed by PLUGBOARD
+     * (which may be null, meaning no plugboard).
+     */
+    private static String plugboardKey(Permutation plugboard) {
+        return plugboard == null ? "" : "=" + plugboard.cycles();
+    }
+
+    /**
+     * Return the number of bits needed to represent 0 .. N-1.
+     */
+    private static int bitsFor(int n) {
+        return n <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /**
+     * Record my activity in STATS, or stop recording if STATS is null.
+     */
+    void setStats(Stats stats) {
+        _stats = stats;
     }
 
     /**
      * Returns the result of converting the input character C (as an
      * index in the range 0..alphabet size - 1), after first advancing
-     * the machine.
+     * the machine.  Every Events.SAMPLE_INTERVAL'th character is
+     * offered to an Events.CharSampled event.
      */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+        if (_stats != null) {
+            _stats.charConverted();
+        }
+        _untilSample -= 1;
+        if (_untilSample == 0) {
+            _untilSample = Events.SAMPLE_INTERVAL;
+            return convertSampled(c);
+        }
+        return convertAdvanced(c);
+    }
+
+    /**
+     * Return the conversion of C once the rotors have advanced,
+     * recording it in an Events.CharSampled event if one is enabled.
+     */
+    private int convertSampled(int c) {
+        Events.CharSampled event = new Events.CharSampled();
+        event.begin();
+        int result = convertAdvanced(c);
+        event.end();
+        if (event.shouldCommit()) {
+            event.input = _alphabet.toChar(c);
+            event.output = _alphabet.toChar(result);
+            StringBuilder settings = new StringBuilder();
+            for (int k = 1; k < _numRotors; k += 1) {
+                settings.append(_alphabet.toChar(_rotors[k].setting()));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            event.settings = settings.toString();
+            event.commit();
         }
-        c = plugboard().permute(c);
+        return result;
+    }
+
+    /**
+     * Return the conversion of C once the rotors have advanced.
+     */
+    private int convertAdvanced(int c) {
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            return convertVerbosely(c);
+        }
+        Rotor fast = _rotors[_numRotors - 1];
+        if (fast != _fusedRotor || _plugboard != _fusedPlugboard) {
+            fusePlugboard();
+        }
+        int offset = fast.setting() - fast.optional();
+        if (offset < 0) {
+            offset += _alphabet.size();
+        }
+        c = _entry[offset][c];
+        for (int f = _numRotors - 2; f > _coreTop; f -= 1) {
+            c = _rotors[f].convertForward(c);
+        }
+        if (_coreDirty) {
+            buildCore();
+        }
+        c = _core[c];
+        for (int b = _coreTop + 1; b < _numRotors - 1; b += 1) {
+            c = _rotors[b].convertBackward(c);
+        }
+        return _exit[offset][c];
+    }
+
+    /**
+     * Return the conversion of C, as for convert(int) once the rotors
+     * have advanced, tracing each stage on the standard error.
+     */
+    private int convertVerbosely(int c) {
+        System.err.printf("[");
+        for (int r = 1; r < numRotors(); r += 1) {
+            System.err.printf("%c",
+                    alphabet().toChar(getRotor(r).setting()));
         }
+        System.err.printf("] %c -> ", alphabet().toChar(c));
+        c = plugboard().permute(c);
+        System.err.printf("%c -> ", alphabet().toChar(c));
         c = applyRotors(c);
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
-        }
+        System.err.printf("%c%n", alphabet().toChar(c));
         return c;
     }
 
+    /**
+     * Rebuild _core, the permutation performed by the rotors in slots
+     * 0 .. _coreTop (the reflector and the rotors that move least often)
+     * taken together: forward through them, reflected, and back.
+     */
+    private void buildCore() {
+        for (int c = 0; c < _core.length; c += 1) {
+            int x = c;
+            for (int f = _coreTop; f >= 0; f -= 1) {
+                x = _rotors[f].convertForward(x);
+            }
+            for (int b = 1; b <= _coreTop; b += 1) {
+                x = _rotors[b].convertBackward(x);
+            }
+            _core[c] = x;
+        }
+        _coreDirty = false;
+    }
+
+    /**
+     * Rebuild _entry and _exit for my current fast rotor and plugboard.
+     * _entry[OFFSET][C] is the result of passing C through the plugboard
+     * and then forward through the fast rotor at offset OFFSET (its
+     * setting less its ring setting); _exit[OFFSET][C] passes C backward
+     * through the fast rotor and then through the plugboard.  An
+     * identity plugboard is not consulted at all.
+     */
+    private void fusePlugboard() {
+        int size = _alphabet.size();
+        Rotor fast = _rotors[_numRotors - 1];
+        Wiring wiring = new Wiring(new Rotor[] { fast });
+        int[] plug = new int[size];
+        boolean identity = _plugboard == null || _plugboard.identity();
+        for (int c = 0; c < size; c += 1) {
+            plug[c] = identity ? c : _plugboard.permute(c);
+        }
+        if (_entry == null || _entry.length != size) {
+            _entry = new int[size][size];
+            _exit = new int[size][size];
+        }
+        for (int offset = 0; offset < size; offset += 1) {
+            for (int c = 0; c < size; c += 1) {
+                _entry[offset][c] =
+                    wiring.through(wiring.forward(0), offset, plug[c]);
+                _exit[offset][c] =
+                    plug[wiring.through(wiring.backward(0), offset, c)];
+            }
+        }
+        _fusedRotor = fast;
+        _fusedPlugboard = _plugboard;
+    }
+
+    /**
+     * Advance my rotors as converting a character would, without
+     * converting one.
+     */
+    void step() {
+        advanceRotors();
+    }
+
     /**
      * Advance all rotors to their next position.
      */
@@ -157,23 +729,23 @@ class Machine {
                 if (_rotors[i].atNotch()) {
                     check = true;
                 }
-                _rotors[i].advance();
+                advance(i, false);
             } else if (check) {
                 if (!_rotors[i].atNotch()) {
-                    _rotors[i].advance();
+                    advance(i, false);
                     check = false;
                 } else {
                     if (_rotors[i - 1].rotates()) {
-                        _rotors[i].advance();
+                        advance(i, false);
                     } else if (_rotors[i - 1].reflecting()) {
-                        _rotors[i].advance();
+                        advance(i, false);
                         check = false;
                     }
                 }
             } else {
                 if (_rotors[i].atNotch()) {
                     if (_rotors[i - 1].rotates()) {
-                        _rotors[i].advance();
+                        advance(i, true);
                         check = true;
                     }
                 }
@@ -181,6 +753,20 @@ class Machine {
         }
     }
 
+    /**
+     * Advance the rotor in slot K.  DOUBLESTEP is true iff it moves
+     * because of its own notch rather than the rotor to its right.
+     */
+    private void advance(int k, boolean doubleStep) {
+        _rotors[k].advance();
+        if (k <= _coreTop) {
+            _coreDirty = true;
+        }
+        if (_stats != null) {
+            _stats.rotorAdvanced(doubleStep);
+        }
+    }
+
 
     /**
      * Return the result of applying the rotors to the character C (as an
@@ -201,6 +787,8 @@ class Machine {
      * the rotors accordingly.
      */
     String convert(String msg) {
+        Events.Conversion event = new Events.Conversion();
+        event.begin();
         String result = "";
         for (int k = 0; k < msg.length(); k++) {
             if ((Character.toString(msg.charAt(k))).equals(" ")) {
@@ -212,9 +800,123 @@ class Machine {
             int integer = convert(alphabet().toInt(msg.charAt(k)));
             result += alphabet().toChar(integer);
         }
+        commit(event, msg.length(), ROTORS);
         return result;
     }
 
+    /**
+     * Convert the characters BUF[START .. END-1] in place, updating the
+     * state of the rotors accordingly.  Characters not in my alphabet
+     * are left unchanged and do not advance the rotors.
+     */
+    void convert(char[] buf, int start, int end) {
+        Events.Conversion event = new Events.Conversion();
+        event.begin();
+        Tape tape = bulkTape();
+        if (tape != null) {
+            loadKernelPositions();
+            int state = tape.state(_kernelPos);
+            for (int k = start; k < end; k += 1) {
+                int c = _alphabet.indexOf(buf[k]);
+                if (c >= 0) {
+                    buf[k] = _alphabet.toChar(tape.convert(state, c));
+                    state = tape.next(state);
+                }
+            }
+            tape.positions(state, _kernelPos);
+            storeKernelPositions();
+            commit(event, end - start, TAPE);
+            return;
+        }
+        Kernel kernel = bulkKernel();
+        if (kernel != null) {
+            loadKernelPositions();
+            kernel.convert(_kernelPos, buf, start, end);
+            storeKernelPositions();
+            commit(event, end - start, KERNEL);
+            return;
+        }
+        for (int k = start; k < end; k += 1) {
+            int c = _alphabet.indexOf(buf[k]);
+            if (c >= 0) {
+                buf[k] = _alphabet.toChar(convert(c));
+            }
+        }
+        commit(event, end - start, ROTORS);
+    }
+
+    /**
+     * Convert the bytes BUF[START .. END-1], taken as ISO-8859-1
+     * characters, in place, as for convert(char[], int, int).
+     */
+    void convert(byte[] buf, int start, int end) {
+        Events.Conversion event = new Events.Conversion();
+        event.begin();
+        Tape tape = bulkTape();
+        if (tape != null) {
+            loadKernelPositions();
+            int state = tape.state(_kernelPos);
+            for (int k = start; k < end; k += 1) {
+                int c = _alphabet.indexOf((char) (buf[k] & BYTE_MASK));
+                if (c >= 0) {
+                    buf[k] = (byte) _alphabet.toChar(tape.convert(state, c));
+                    state = tape.next(state);
+                }
+            }
+            tape.positions(state, _kernelPos);
+            storeKernelPositions();
+            commit(event, end - start, TAPE);
+            return;
+        }
+        Kernel kernel = bulkKernel();
+        if (kernel != null) {
+            loadKernelPositions();
+            kernel.convert(_kernelPos, buf, start, end);
+            storeKernelPositions();
+            commit(event, end - start, KERNEL);
+            return;
+        }
+        for (int k = start; k < end; k += 1) {
+            int c = _alphabet.indexOf((char) (buf[k] & BYTE_MASK));
+            if (c >= 0) {
+                buf[k] = (byte) _alphabet.toChar(convert(c));
+            }
+        }
+        commit(event, end - start, ROTORS);
+    }
+
+    /**
+     * End EVENT, the conversion of LENGTH characters by ENGINE, and
+     * commit it if it is enabled.
+     */
+    private static void commit(Events.Conversion event, int length,
+                               String engine) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.length = length;
+            event.engine = engine;
+            event.commit();
+        }
+    }
+
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * Engine reported in Events.Conversion when converting with a tape.
+     */
+    private static final String TAPE = "tape";
+    /**
+     * Engine reported in Events.Conversion when converting with a kernel.
+     */
+    private static final String KERNEL = "kernel";
+    /**
+     * Engine reported in Events.Conversion when converting rotor by
+     * rotor.
+     */
+    private static final String ROTORS = "rotors";
+
     /**
      * Common alphabet of my rotors.
      */
@@ -240,5 +942,108 @@ class Machine {
      * plugboard.
      */
     private Permutation _plugboard;
+    /**
+     * Statistics being recorded, or null.
+     */
+    private Stats _stats;
+    /**
+     * # characters to convert before the next is offered to an
+     * Events.CharSampled event.
+     */
+    private int _untilSample = Events.SAMPLE_INTERVAL;
+    /**
+     * Largest number of bits of a snapshot used for plugboard numbers.
+     */
+    private static final int MAX_PLUGBOARD_BITS = 30;
+    /**
+     * Rotors each slot may hold in a snapshot, or null before the
+     * snapshot layout is computed.
+     */
+    private Rotor[][] _slotGroups;
+    /**
+     * Snapshot bits for the rotor in each slot.
+     */
+    private int[] _slotBits;
+    /**
+     * Snapshot bits for a setting.
+     */
+    private int _positionBits;
+    /**
+     * Snapshot bits for the rotors, settings and ring settings, below the
+     * plugboard number.
+     */
+    private int _rotorBits;
+    /**
+     * Snapshot bits for the plugboard number.
+     */
+    private int _plugboardBits;
+    /**
+     * Registered plugboards, by number.
+     */
+    private ArrayList<Permutation> _plugboards;
+    /**
+     * Numbers of registered plugboards, by plugboardKey.
+     */
+    private HashMap<String, Integer> _plugboardIds;
+    /**
+     * Highest slot whose rotor is folded into _core.
+     */
+    private final int _coreTop;
+    /**
+     * The permutation performed by the rotors in slots 0 .. _coreTop.
+     */
+    private final int[] _core;
+    /**
+     * True iff _core must be rebuilt before it is used.
+     */
+    private boolean _coreDirty = true;
+    /**
+     * Tables my rotors convert through, or null.
+     */
+    private RotorTables _tables;
+    /**
+     * Attached tape, or null.
+     */
+    private Tape _tape;
+    /**
+     * True iff _tape is known to match my current setup.
+     */
+    private boolean _tapeMatches;
+    /**
+     * Largest number of kernels kept.
+     */
+    private static final int MAX_KERNELS = 64;
+    /**
+     * True iff buffers are converted with kernels.
+     */
+    private boolean _useKernels;
+    /**
+     * Kernel for my current setup, or null if not yet looked up.
+     */
+    private Kernel _kernel;
+    /**
+     * Kernels generated, by kernelKey.
+     */
+    private final HashMap<String, Kernel> _kernels = new HashMap<>();
+    /**
+     * Rotor settings as given to and updated by kernels.
+     */
+    private final int[] _kernelPos;
+    /**
+     * Fast rotor for which _entry and _exit were built, or null.
+     */
+    private Rotor _fusedRotor;
+    /**
+     * Plugboard for which _entry and _exit were built.
+     */
+    private Permutation _fusedPlugboard;
+    /**
+     * Plugboard followed by the fast rotor's forward wiring, by offset.
+     */
+    private int[][] _entry;
+    /**
+     * Fast rotor's backward wiring followed by the plugboard, by offset.
+     */
+    private int[][] _exit;
 
 }
@@ -0,0 +1,357 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A pool of Machines of one configuration for programs that convert
+ * from many threads.  Each acquire() leases a machine, set up for a
+ * given setting line, to the caller alone until it closes the lease;
+ * the pool's machines are copies of a prototype (see Machine.copy), so
+ * the configuration is parsed and its permutations built only once.
+ * <p>
+ * Idle machines are kept without locks: each thread first tries the
+ * one machine it last released, kept for it alone in a per-thread slot,
+ * and then a shared Treiber stack, whose head is swapped by
+ * compare-and-set.  Each push allocates a fresh stack node, so that a
+ * node popped and pushed again cannot be mistaken for the one a slower
+ * thread read (the ABA problem).  Each machine keeps its own
+ * SettingCache, so that acquiring one for a setting line it has been
+ * set up for before costs only a Machine.restore.
+ * <p>
+ * The capacity bounds all idle machines, those in per-thread slots as
+ * well as those on the stack; a machine released when the pool is full
+ * is dropped.  A thread that exits with a machine in its slot takes
+ * that machine's share of the capacity with it, so a pool used from
+ * short-lived threads should be made without per-thread slots.
+ *
+ * @author taiga
+ */
+class MachinePool implements MachinePoolMBean {
+
+    /**
+     * A pool of copies of PROTOTYPE keeping up to CAPACITY idle
+     * machines, each caching up to SETTINGS setting lines, and keeping
+     * each thread's last released machine in a slot of its own iff
+     * THREADSLOTS.  PROTOTYPE itself is not leased, and should not be
+     * changed while the pool is in use.
+     */
+    MachinePool(Machine prototype, int capacity, int settings,
+                boolean threadSlots) {
+        if (capacity < 0 || settings <= 0) {
+            throw error("bad pool size");
+        }
+        _prototype = prototype;
+        _capacity = capacity;
+        _settings = settings;
+        _local = threadSlots ? new ThreadLocal<>() : null;
+    }
+
+    /**
+     * A pool of copies of PROTOTYPE keeping up to CAPACITY idle
+     * machines, each caching up to SETTINGS setting lines, with
+     * per-thread slots.
+     */
+    MachinePool(Machine prototype, int capacity, int settings) {
+        this(prototype, capacity, settings, true);
+    }
+
+    /**
+     * Return a pool of machines of the configuration in the file named
+     * CONFIG, with the default capacity and setting cache size.
+     */
+    static MachinePool load(String config) {
+        return new MachinePool(Main.loadConfig(config), DEFAULT_CAPACITY,
+                               DEFAULT_SETTINGS);
+    }
+
+    /**
+     * Publish me through the platform MBean server as NAME.
+     */
+    void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(name));
+        } catch (JMException excp) {
+            throw error("could not register %s", name);
+        }
+    }
+
+    /**
+     * Return a lease on a machine set up according to the setting line
+     * SETTINGS (as for Main.setUp, without the leading '*').
+     */
+    Lease acquire(String settings) {
+        Pooled pooled = _local == null ? null : _local.get();
+        if (pooled != null) {
+            _local.set(null);
+            _size.decrementAndGet();
+            _threadHits.increment();
+        } else {
+            pooled = pop();
+            if (pooled != null) {
+                _stackHits.increment();
+            } else {
+                _misses.increment();
+                pooled = new Pooled(_prototype.copy(), _settings);
+            }
+        }
+        try {
+            if (pooled.cache.setUp(settings)) {
+                _cachedSetUps.increment();
+            }
+        } catch (EnigmaException excp) {
+            release(pooled);
+            throw excp;
+        }
+        _leased.increment();
+        return new Lease(pooled);
+    }
+
+    /**
+     * Make POOLED idle if there is room, keeping it for the current
+     * thread if its slot is free, else on the shared stack.
+     */
+    private void release(Pooled pooled) {
+        if (!reserve()) {
+            _dropped.increment();
+        } else if (_local != null && _local.get() == null) {
+            _local.set(pooled);
+        } else {
+            push(pooled);
+        }
+    }
+
+    /**
+     * Count one more idle machine, returning false if the pool is
+     * already full.
+     */
+    private boolean reserve() {
+        while (true) {
+            int size = _size.get();
+            if (size >= _capacity) {
+                return false;
+            }
+            if (_size.compareAndSet(size, size + 1)) {
+                return true;
+            }
+            _contention.increment();
+        }
+    }
+
+    /**
+     * Push POOLED, already counted by reserve(), onto the shared stack.
+     */
+    private void push(Pooled pooled) {
+        Node node = new Node(pooled);
+        while (true) {
+            node.next = _head.get();
+            if (_head.compareAndSet(node.next, node)) {
+                return;
+            }
+            _contention.increment();
+        }
+    }
+
+    /**
+     * Pop a machine from the shared stack, returning null if it is
+     * empty.
+     */
+    private Pooled pop() {
+        while (true) {
+            Node top = _head.get();
+            if (top == null) {
+                return null;
+            }
+            if (_head.compareAndSet(top, top.next)) {
+                _size.decrementAndGet();
+                return top.pooled;
+            }
+            _contention.increment();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    @Override
+    public int getIdle() {
+        return _size.get();
+    }
+
+    @Override
+    public long getLeased() {
+        return _leased.sum();
+    }
+
+    @Override
+    public long getThreadHits() {
+        return _threadHits.sum();
+    }
+
+    @Override
+    public long getStackHits() {
+        return _stackHits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return _dropped.sum();
+    }
+
+    @Override
+    public long getContention() {
+        return _contention.sum();
+    }
+
+    @Override
+    public long getCachedSetUps() {
+        return _cachedSetUps.sum();
+    }
+
+    /**
+     * Exclusive use of one of a pool's machines, until closed.
+     */
+    class Lease implements AutoCloseable {
+
+        /**
+         * A lease on POOLED.
+         */
+        private Lease(Pooled pooled) {
+            _pooled = pooled;
+        }
+
+        /**
+         * Return the leased machine.  It must not be used once I am
+         * closed.
+         */
+        Machine machine() {
+            if (_pooled == null) {
+                throw error("machine lease already closed");
+            }
+            return _pooled.machine;
+        }
+
+        /**
+         * Return my machine to the pool.  Closing me again has no
+         * effect.
+         */
+        @Override
+        public void close() {
+            if (_pooled != null) {
+                Pooled pooled = _pooled;
+                _pooled = null;
+                _leased.decrement();
+                release(pooled);
+            }
+        }
+
+        /**
+         * The leased machine and its setting cache, or null once
+         * closed.
+         */
+        private Pooled _pooled;
+    }
+
+    /**
+     * A pooled machine and its setting cache.
+     */
+    private static class Pooled {
+
+        /**
+         * MACHINE, with a SettingCache of CAPACITY setting lines.
+         */
+        Pooled(Machine machine, int capacity) {
+            this.machine = machine;
+            cache = new SettingCache(machine, capacity);
+        }
+
+        /**
+         * The machine.
+         */
+        final Machine machine;
+        /**
+         * Its setting cache.
+         */
+        final SettingCache cache;
+    }
+
+    /**
+     * A node of the shared stack.
+     */
+    private static class Node {
+
+        /**
+         * A node holding POOLED.
+         */
+        Node(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        /**
+         * The idle machine.
+         */
+        final Pooled pooled;
+        /**
+         * The node below me, or null.
+         */
+        Node next;
+    }
+
+    /**
+     * Default number of idle machines kept.
+     */
+    static final int DEFAULT_CAPACITY = 64;
+    /**
+     * Default number of setting lines cached per machine.
+     */
+    static final int DEFAULT_SETTINGS = 16;
+
+    /**
+     * Machine copied to make new pooled machines.
+     */
+    private final Machine _prototype;
+    /**
+     * Most idle machines kept, in per-thread slots and the shared stack.
+     */
+    private final int _capacity;
+    /**
+     * Size of each machine's setting cache.
+     */
+    private final int _settings;
+    /**
+     * Top of the shared stack, or null.
+     */
+    private final AtomicReference<Node> _head = new AtomicReference<>();
+    /**
+     * Number of idle machines, in per-thread slots and the shared stack,
+     * counting those being pushed.
+     */
+    private final AtomicInteger _size = new AtomicInteger();
+    /**
+     * The machine each thread last released, if not since acquired, or
+     * null if the pool has no per-thread slots.
+     */
+    private final ThreadLocal<Pooled> _local;
+    /**
+     * Counters reported through MachinePoolMBean.
+     */
+    private final LongAdder _leased = new LongAdder(),
+        _threadHits = new LongAdder(), _stackHits = new LongAdder(),
+        _misses = new LongAdder(), _dropped = new LongAdder(),
+        _contention = new LongAdder(), _cachedSetUps = new LongAdder();
+}
@@ -0,0 +1,63 @@
+package enigma;
+
+/**
+ * Management interface through which a MachinePool is published over
+ * JMX.
+ *
+ * @author taiga
+ */
+public interface MachinePoolMBean {
+
+    /**
+     * Return the number of machines the pool keeps idle, at most,
+     * counting those in per-thread slots.
+     */
+    int getCapacity();
+
+    /**
+     * Return the number of machines now idle, in per-thread slots or in
+     * the shared stack.
+     */
+    int getIdle();
+
+    /**
+     * Return the number of machines now leased.
+     */
+    long getLeased();
+
+    /**
+     * Return the number of acquisitions served from the acquiring
+     * thread's own cached machine.
+     */
+    long getThreadHits();
+
+    /**
+     * Return the number of acquisitions served from the shared stack.
+     */
+    long getStackHits();
+
+    /**
+     * Return the number of acquisitions that had to copy a new machine.
+     */
+    long getMisses();
+
+    /**
+     * Return the number of released machines dropped because the pool
+     * was full.
+     */
+    long getDropped();
+
+    /**
+     * Return the number of failed compare-and-set attempts, each a
+     * collision between concurrent acquisitions or releases: on the
+     * shared stack's head, and on the count of idle machines when
+     * releasing.
+     */
+    long getContention();
+
+    /**
+     * Return the number of acquisitions whose setting line was found in
+     * the setting cache of the machine acquired.
+     */
+    long getCachedSetUps();
+}
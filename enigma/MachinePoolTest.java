@@ -0,0 +1,163 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for MachinePool.
+ *
+ * @author taiga
+ */
+public class MachinePoolTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a five-slot machine with rotors B, Beta, I, III and IV.
+     */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "I", "III", "IV");
+    }
+
+    /**
+     * Setting lines used by the tests.
+     */
+    private static final String[] SETTINGS = {
+        "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "B Beta I IV III QEPA",
+        "B Beta IV I III ZZZZ (AB)"
+    };
+
+    /**
+     * Message converted by the tests.
+     */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReuse() {
+        MachinePool pool = new MachinePool(machine(), 1, 4);
+        Machine first;
+        try (MachinePool.Lease lease = pool.acquire(SETTINGS[0])) {
+            first = lease.machine();
+            lease.machine().convert(MESSAGE);
+        }
+        try (MachinePool.Lease lease = pool.acquire(SETTINGS[0])) {
+            assertSame(first, lease.machine());
+            MachinePool.Lease other = pool.acquire(SETTINGS[1]);
+            assertNotSame(first, other.machine());
+            assertEquals(2, pool.getLeased());
+            other.close();
+            other.close();
+            try {
+                other.machine();
+                fail("closed lease used");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        assertEquals(0, pool.getLeased());
+        assertEquals(1, pool.getThreadHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(1, pool.getCachedSetUps());
+        assertEquals(1, pool.getIdle());
+        assertEquals(1, pool.getDropped());
+
+        try {
+            pool.acquire("B Beta III IV X AAAA");
+            fail("bad setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(0, pool.getLeased());
+        }
+    }
+
+    @Test
+    public void testNoThreadSlots() {
+        MachinePool pool = new MachinePool(machine(), 1, 4, false);
+        Machine first;
+        try (MachinePool.Lease lease = pool.acquire(SETTINGS[0])) {
+            first = lease.machine();
+        }
+        assertEquals(1, pool.getIdle());
+        try (MachinePool.Lease lease = pool.acquire(SETTINGS[1])) {
+            assertSame(first, lease.machine());
+            assertEquals(0, pool.getIdle());
+        }
+        assertEquals(0, pool.getThreadHits());
+        assertEquals(1, pool.getStackHits());
+
+        MachinePool none = new MachinePool(machine(), 0, 4);
+        none.acquire(SETTINGS[0]).close();
+        assertEquals(0, none.getIdle());
+        assertEquals(1, none.getDropped());
+    }
+
+    @Test
+    public void testConcurrentLeases() throws InterruptedException {
+        String[] expected = new String[SETTINGS.length];
+        for (int i = 0; i < SETTINGS.length; i += 1) {
+            Machine mach = machine();
+            Main.setUp(mach, SETTINGS[i]);
+            expected[i] = mach.convert(MESSAGE);
+        }
+        MachinePool pool = new MachinePool(machine(), 8, 4);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        final int rounds = 300;
+        for (int t = 0; t < 4; t += 1) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                try {
+                    List<MachinePool.Lease> held = new ArrayList<>();
+                    for (int r = 0; r < rounds; r += 1) {
+                        int i = (r + offset) % SETTINGS.length;
+                        MachinePool.Lease lease = pool.acquire(SETTINGS[i]);
+                        assertEquals(expected[i],
+                                     lease.machine().convert(MESSAGE));
+                        held.add(lease);
+                        if (r % 3 == 2) {
+                            for (MachinePool.Lease h : held) {
+                                h.close();
+                            }
+                            held.clear();
+                        }
+                    }
+                    for (MachinePool.Lease h : held) {
+                        h.close();
+                    }
+                } catch (Throwable excp) {
+                    failure.compareAndSet(null, excp);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(0, pool.getLeased());
+        assertEquals(4 * rounds, pool.getThreadHits() + pool.getStackHits()
+                     + pool.getMisses());
+        assertTrue(pool.getIdle() <= pool.getCapacity());
+        assertTrue(pool.getMisses() < 4 * rounds / 3);
+    }
+}
@@ -1,6 +1,13 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -76,4 +83,261 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testStatsDoubleStep() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        mach.insertRotors(ROTORS1);
+        mach.setRotors("AAJA", "");
+        mach.setPlugboard(new Permutation("", AZ));
+        Stats stats = new Stats();
+        mach.setStats(stats);
+        mach.convert("AB");
+        assertEquals(2, stats.getCharsConverted());
+        assertEquals(4, stats.getRotorAdvances());
+        assertEquals(1, stats.getDoubleSteps());
+        assertEquals('B', AZ.toChar(mach.getRotor(2).setting()));
+        assertEquals('K', AZ.toChar(mach.getRotor(3).setting()));
+    }
+
+    @Test
+    public void testSnapshotRestore() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertTrue(mach.canSnapshot());
+        long snapshot = mach.snapshot();
+        String first = mach.convert("FROMHISSHOULDERHIAWATHA");
+        mach.insertRotors(new String[] {"B", "Beta", "I", "III", "IV"});
+        mach.setPlugboard(new Permutation("(AB)", AZ));
+        long other = mach.snapshot();
+        assertNotEquals(snapshot, other);
+        mach.restore(snapshot);
+        assertEquals(first, mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.restore(snapshot);
+        Machine copy = mach.copy();
+        assertEquals(first, copy.convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals(first, mach.convert("FROMHISSHOULDERHIAWATHA"));
+        copy.restore(other);
+        assertEquals("(AB)", copy.plugboard().cycles());
+        assertSame(ROTORS.get("I"), mach.getRotor(4));
+    }
+
+    @Test
+    public void testSettingLine() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX)", AZ));
+        mach.convert("HELLO");
+        String setting = mach.setting();
+        assertEquals("B Beta III IV I AXLJ AAAA (EX) (HQ)", setting);
+        String rest = mach.convert("WORLD");
+        Main.setUp(mach, setting);
+        assertEquals(rest, mach.convert("WORLD"));
+    }
+
+    @Test
+    public void testSettingCache() {
+        Machine cached = new Machine(AZ, 5, 3, ROTORS.values());
+        Machine plain = cached.copy();
+        SettingCache cache = new SettingCache(cached, 2);
+        String[] settings = {
+            "B Beta III IV I AXLE (HQ) (EX)",
+            "B Beta I IV III AAAA BCDE",
+            "B  Beta III IV I   AXLE (HQ) (EX) ",
+            "B Beta I IV III AAAA",
+        };
+        for (String setting : settings) {
+            cache.setUp(setting);
+            Main.setUp(plain, setting);
+            assertEquals(plain.convert("FROMHISSHOULDER"),
+                         cached.convert("FROMHISSHOULDER"));
+        }
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testSettingCachePlugboards() {
+        Machine cached =
+            TestUtils.navalMachine(6, 4, "B", "Beta", "I", "II", "III", "IV");
+        Machine plain = cached.copy();
+        SettingCache cache = new SettingCache(cached, 4);
+        int plugboards = 0;
+        for (char a = 'A'; a <= 'Z'; a += 1) {
+            for (char b = (char) (a + 1); b <= 'Z'; b += 1) {
+                String setting =
+                    "B Beta I II III IV AAAAA (" + a + b + ")";
+                assertFalse(cache.setUp(setting));
+                assertTrue(cache.setUp(setting));
+                Main.setUp(plain, setting);
+                assertEquals(plain.convert("FROMHISSHOULDER"),
+                             cached.convert("FROMHISSHOULDER"));
+                plugboards += 1;
+            }
+        }
+        assertTrue(plugboards > 1 << 6);
+        assertEquals(plugboards, cache.hits());
+        assertEquals(4, cache.size());
+        assertEquals(0, cached.snapshotPlugboards());
+    }
+
+    @Test
+    public void testCoreAcrossSteps() {
+        Machine mach = mach1();
+        mach.setRotors("AXLE", "BCDE");
+        Rotor[] slots = Stepping.slots(mach);
+        Stepping stepping = new Stepping(mach);
+        Wiring wiring = new Wiring(slots);
+        int[] order = { 0, 1, 2, 3, 4 };
+        int[] pos = new int[5];
+        int[] offsets = new int[5];
+        int[] perm = new int[26];
+        for (int k = 1; k < 5; k += 1) {
+            pos[k] = slots[k].setting();
+        }
+        for (int i = 0; i < 2000; i += 1) {
+            stepping.step(pos);
+            for (int k = 1; k < 5; k += 1) {
+                offsets[k] = Math.floorMod(pos[k] - slots[k].optional(), 26);
+            }
+            wiring.permutation(order, offsets, perm);
+            int c = i % 26;
+            assertEquals(perm[c], mach.convert(c));
+        }
+    }
+
+    @Test
+    public void testKernel() {
+        Machine plain = mach1();
+        Main.setUp(plain, "B Beta III IV I AXLE BCDE (HQ) (EX) (IP)");
+        Machine fast = plain.copy();
+        fast.useKernels(true);
+        assertNotNull(fast.kernel());
+        assertTrue(fast.kernel().getClass().isHidden());
+        char[] a = new char[3000], b = new char[3000];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = b[i] = i % 7 == 0 ? ' ' : (char) ('A' + i % 26);
+        }
+        for (int i = 0; i < a.length; i += 1000) {
+            plain.convert(a, i, i + 1000);
+            fast.convert(b, i, i + 1000);
+        }
+        assertArrayEquals(a, b);
+        assertEquals(plain.setting(), fast.setting());
+        assertEquals(plain.convert("FROMHISSHOULDER"),
+                     fast.convert("FROMHISSHOULDER"));
+    }
+
+    @Test
+    public void testTape() throws IOException {
+        Machine plain = mach1();
+        Main.setUp(plain, "B Beta III IV I QXLE BCDE (HQ) (EX) (IP)");
+        File file = File.createTempFile("enigma", ".tape");
+        file.deleteOnExit();
+        Tape.write(plain, file);
+        Tape tape = new Tape(file);
+        assertEquals(26 * 26 * 26, tape.states());
+        assertEquals(Tape.key(plain), tape.key());
+
+        Machine taped = plain.copy();
+        taped.attachTape(tape);
+        char[] a = "FROM HIS SHOULDER HIAWATHA".toCharArray();
+        char[] b = a.clone();
+        plain.convert(a, 0, a.length);
+        taped.convert(b, 0, b.length);
+        assertArrayEquals(a, b);
+        assertEquals(plain.setting(), taped.setting());
+
+        Main.setUp(taped, "B Beta III IV I AXLE BCDE (HQ) (EX)");
+        Main.setUp(plain, "B Beta III IV I AXLE BCDE (HQ) (EX)");
+        plain.convert(a, 0, a.length);
+        taped.convert(b, 0, b.length);
+        assertArrayEquals(a, b);
+    }
+
+    @Test
+    public void testRotorTables() throws IOException {
+        Machine plain = mach1();
+        Main.setUp(plain, "B Beta III IV I QXLE BCDE (HQ) (EX) (IP)");
+        File file = File.createTempFile("enigma", ".tables");
+        file.deleteOnExit();
+        file.delete();
+        Rotor[] rotors = plain.allRotors();
+        RotorTables.open(file, rotors);
+        long modified = file.lastModified();
+        RotorTables tables = RotorTables.open(file, rotors);
+        assertEquals(modified, file.lastModified());
+
+        Machine tabled = plain.copy();
+        tabled.useTables(tables);
+        Machine copied = tabled.copy();
+        for (Machine mach : new Machine[] { tabled, copied }) {
+            Machine reference = plain.copy();
+            assertEquals(reference.convert("FROMHISSHOULDERHIAWATHA"),
+                         mach.convert("FROMHISSHOULDERHIAWATHA"));
+        }
+        Machine direct = plain.copy();
+        direct.useTables(new RotorTables(direct.allRotors()));
+        assertEquals(plain.convert("FROMHISSHOULDERHIAWATHA"),
+                     direct.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testFlatMachine() {
+        String[] settings = {
+            "B Beta III IV I AXLE BCDE (HQ) (EX) (IP)",
+            "B Beta I IV III ADUQ",
+            "B Beta III IV I AAEU",
+        };
+        for (String setting : settings) {
+            Machine mach = mach1();
+            Main.setUp(mach, setting);
+            mach.convert(0);
+            FlatMachine flat = new FlatMachine(mach);
+            Machine reference = mach.copy();
+            for (int i = 0; i < 20000; i += 1) {
+                assertEquals(reference.convert(i % 26), flat.convert(i % 26));
+            }
+            flat.store(mach);
+            assertEquals(reference.setting(), mach.setting());
+            for (int i = 0; i < 1000; i += 1) {
+                assertEquals(reference.convert(i % 26), mach.convert(i % 26));
+            }
+        }
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        Machine mach = mach1();
+        Main.setUp(mach, "B Beta III IV I AXLE (HQ) (EX) (IP)");
+        char[] buf = new char[3 * Events.SAMPLE_INTERVAL];
+        Arrays.fill(buf, 'A');
+        File file = File.createTempFile("enigma", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(Events.Conversion.class);
+            recording.enable(Events.CharSampled.class);
+            recording.start();
+            mach.convert(buf, 0, buf.length);
+            mach.convert("HELLO");
+            recording.stop();
+            recording.dump(file.toPath());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(
+                file.toPath());
+            int conversions = 0, samples = 0;
+            for (RecordedEvent event : events) {
+                String name = event.getEventType().getName();
+                if (name.equals("enigma.Conversion")) {
+                    conversions += 1;
+                    assertEquals("rotors", event.getString("engine"));
+                } else if (name.equals("enigma.CharSampled")) {
+                    samples += 1;
+                    assertEquals('A', event.getChar("input"));
+                }
+            }
+            assertEquals(2, conversions);
+            assertEquals(3, samples);
+        } finally {
+            file.delete();
+        }
+    }
 }
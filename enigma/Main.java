@@ -37,14 +37,34 @@ public final class Main {
     public static void main(String... args) {
         try {
             CommandArgs options =
-                    new CommandArgs("--verbose --=(.*){1,3}", args);
+                    new CommandArgs("--verbose --stats --period --pipeline "
+                                    + "--fold --drop --map=(.*) "
+                                    + "--tables=(.*) --=(.*){1,3}", args);
             if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                        + "[INPUT [OUTPUT]]");
+                throw error("Usage: java enigma.Main [--verbose] [--stats] "
+                        + "[--period] [--pipeline] [--fold] [--drop] "
+                        + "[--map=PAIRS] [--tables=FILE] [INPUT [OUTPUT]]");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            Main main = new Main(options.get("--"));
+            main._period = options.contains("--period");
+            main._pipeline = options.contains("--pipeline");
+            main._fold = options.contains("--fold");
+            main._drop = options.contains("--drop");
+            main._map = options.getLast("--map");
+            main._tables = options.getLast("--tables");
+            if (options.contains("--stats")) {
+                main._stats = new Stats();
+                main._stats.register();
+            }
+            try {
+                main.process();
+            } finally {
+                if (main._stats != null) {
+                    main._stats.report(System.err);
+                }
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -54,7 +74,16 @@ public final class Main {
 
     /**
      * Open the necessary files for non-option arguments ARGS (see comment
-     * on main).
+     * on main).  With --period, the messages of each section are skipped
+     * and the stepping period of its setting is reported instead.  With
+     * --pipeline (and not --period), reading, converting and writing run
+     * as concurrent stages of a Pipeline.  Message lines are cleaned by a
+     * Normalizer as they are read: blanks are dropped, and with --fold,
+     * letters not in the alphabet are replaced by their other case,
+     * --map=PAIRS replaces the first character of each pair of
+     * characters in PAIRS by the second, and with --drop, characters
+     * that are still not in the alphabet are dropped rather than
+     * rejected.
      */
     Main(List<String> args) {
         _config = getInput(args.get(0));
@@ -72,6 +101,21 @@ public final class Main {
         }
     }
 
+    /**
+     * A Main that reads only the configuration file named CONFIG.
+     */
+    private Main(String config) {
+        _config = getInput(config);
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of the
+     * configuration file named NAME.
+     */
+    static Machine loadConfig(String name) {
+        return new Main(name).readConfig();
+    }
+
     /**
      * Return a Scanner reading from the file named NAME.
      */
@@ -100,7 +144,36 @@ public final class Main {
      * results to _output.
      */
     private void process() {
+        long start = System.nanoTime();
         Machine mc = readConfig();
+        if (_tables != null) {
+            try {
+                mc.useTables(RotorTables.open(new File(_tables),
+                                              mc.allRotors()));
+            } catch (IOException excp) {
+                throw error("could not open tables %s", _tables);
+            }
+        }
+        SettingCache settings = new SettingCache(mc, SETTING_CACHE_SIZE);
+        Normalizer normalizer =
+            new Normalizer(mc.alphabet(), _fold, _drop, _map);
+        if (_stats != null) {
+            _stats.configRead(System.nanoTime() - start);
+            mc.setStats(_stats);
+        }
+        if (_pipeline && !_period) {
+            Pipeline pipeline =
+                new Pipeline(_input, mc, settings, normalizer, _stats,
+                             System.out);
+            try {
+                pipeline.run();
+            } finally {
+                if (_stats != null) {
+                    pipeline.report(System.err);
+                }
+            }
+            return;
+        }
         while (_input.hasNext()) {
             String set = _input.nextLine();
             while (set.equals("")) {
@@ -108,29 +181,74 @@ public final class Main {
                 printMessageLine("");
             }
 
-            if (!set.matches("^\\*.*")) {
-                throw new EnigmaException("The input file has to start with *");
-            }
-            if (set.matches("\\*\\s.*")) {
-                set = set.substring(2);
-            } else {
-                set = set.substring(1);
+            set = settingLine(set);
+            setUpSection(mc, settings, set, _stats);
+            if (_period) {
+                System.out.printf("* %s: %s%n", set,
+                                  new PeriodAnalysis(mc));
+                while (_input.hasNextLine() && !_input.hasNext("\\*")) {
+                    _input.nextLine();
+                }
+                continue;
             }
-            setUp(mc, set);
 
             while (_input.hasNextLine() && !_input.hasNext("\\*")) {
-                String replaced = _input.nextLine().replaceAll(" ", "");
+                String replaced = normalizer.normalize(_input.nextLine());
+                start = System.nanoTime();
                 String message = mc.convert(replaced);
+                if (_stats != null) {
+                    _stats.lineConverted(System.nanoTime() - start);
+                }
                 printMessageLine(message);
             }
         }
     }
 
+    /**
+     * Return the settings in LINE, a setting line: LINE less its leading
+     * "*" and the blank that may follow it.
+     */
+    static String settingLine(String line) {
+        if (!line.matches("^\\*.*")) {
+            throw new EnigmaException("The input file has to start with *");
+        }
+        if (line.matches("\\*\\s.*")) {
+            return line.substring(2);
+        } else {
+            return line.substring(1);
+        }
+    }
+
+    /**
+     * Set up MC, whose setting cache is SETTINGS, according to the
+     * setting line SET, recording the setup in STATS (if not null) and
+     * in an Events.SetUp event.
+     */
+    static void setUpSection(Machine mc, SettingCache settings, String set,
+                             Stats stats) {
+        long start = System.nanoTime();
+        Events.SetUp event = new Events.SetUp();
+        event.begin();
+        boolean cached = settings.setUp(set);
+        event.end();
+        if (event.shouldCommit()) {
+            event.rotors = mc.rotorNames();
+            event.plugboardPairs = Events.pairs(mc.plugboard());
+            event.cached = cached;
+            event.commit();
+        }
+        if (stats != null) {
+            stats.sectionSetUp(System.nanoTime() - start, cached);
+        }
+    }
+
     /**
      * Return an Enigma machine configured from the contents of configuration
      * file _config.
      */
     private Machine readConfig() {
+        Events.ConfigRead event = new Events.ConfigRead();
+        event.begin();
         try {
             String alphabet = _config.next();
             if (alphabet.matches("[()*]")) {
@@ -155,6 +273,13 @@ public final class Main {
             if (rotorlist.size() == 0) {
                 throw new EnigmaException("(0 rotors stored)");
             }
+            event.end();
+            if (event.shouldCommit()) {
+                event.rotors = rotorlist.size();
+                event.slots = numRotors;
+                event.pawls = numPawls;
+                event.commit();
+            }
             return new Machine(_alphabet, numRotors, numPawls, rotorlist);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
@@ -222,7 +347,7 @@ public final class Main {
      * Set M according to the specification given on SETTINGS,
      * which must have the format specified in the assignment.
      */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         String[] setting = settings.split("\\s+");
         if (setting.length < M.numRotors() + 1) {
             throw new EnigmaException("setting wrong");
@@ -239,7 +364,8 @@ public final class Main {
         int num = M.numRotors() + 1;
         int setLength = setting.length;
         String[] plugboard;
-        if (setting.length == M.numRotors() + 2) {
+        if (setting.length >= M.numRotors() + 2
+            && !setting[M.numRotors() + 1].startsWith("(")) {
             String optional = setting[M.numRotors() + 1];
             M.setRotors(settingLetter, optional);
             plugboard = Arrays.copyOfRange(setting, num + 1, setLength);
@@ -256,7 +382,7 @@ public final class Main {
             }
             plugboardString = plugboardString + plugboard[i] + " ";
         }
-        M.setPlugboard(new Permutation(plugboardString, _alphabet));
+        M.setPlugboard(new Permutation(plugboardString, M.alphabet()));
     }
 
     /**
@@ -272,13 +398,17 @@ public final class Main {
      */
 
     private void printMessageLine(String msg) {
+        if (_stats != null) {
+            _stats.outputWritten(msg.length() + msg.length() / GROUP
+                                 + System.lineSeparator().length());
+        }
         if (msg.isEmpty()) {
             System.out.println();
             return;
         }
         String message = "";
         for (int i = 0; i < msg.length(); i++) {
-            if ((i + 1) % 5 == 0) {
+            if ((i + 1) % GROUP == 0) {
                 message = message + msg.charAt(i) + " ";
                 System.out.print(message);
                 message = "";
@@ -294,6 +424,16 @@ public final class Main {
     }
 
 
+    /**
+     * Number of distinct setting lines whose setup is cached.
+     */
+    private static final int SETTING_CACHE_SIZE = 1024;
+
+    /**
+     * Number of letters in each output group.
+     */
+    private static final int GROUP = 5;
+
     /**
      * Alphabet used in this machine.
      */
@@ -314,6 +454,36 @@ public final class Main {
      */
     private PrintStream _output;
 
+    /**
+     * Statistics being recorded, or null if --stats was not specified.
+     */
+    private Stats _stats;
+
+    /**
+     * True if --period specified.
+     */
+    private boolean _period;
+    /**
+     * True if --pipeline specified.
+     */
+    private boolean _pipeline;
+    /**
+     * True if --fold specified.
+     */
+    private boolean _fold;
+    /**
+     * True if --drop specified.
+     */
+    private boolean _drop;
+    /**
+     * Character pairs given by --map, or null.
+     */
+    private String _map;
+    /**
+     * Name of the file holding shared rotor tables, or null.
+     */
+    private String _tables;
+
     /**
      * True if --verbose specified.
      */
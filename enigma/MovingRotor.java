@@ -46,6 +46,11 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
+    }
+
     /**
      * notches.
      */
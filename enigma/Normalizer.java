@@ -0,0 +1,130 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Cleans message text for a machine as it is read.  A table gives, for
+ * each ISO-8859-1 character, what becomes of it: characters of the
+ * alphabet are kept; others may be mapped to a configured alphabet
+ * character, folded to the other case where that is in the alphabet,
+ * dropped, or kept, so that converting them fails as before.  Blanks
+ * are dropped unless mapped.  Normalizing text is then one table lookup
+ * per character, done while the text is copied, with no allocation.
+ * Characters beyond the table are kept if they are in the alphabet and
+ * otherwise dropped or kept as for unmapped characters.
+ *
+ * @author taiga
+ */
+class Normalizer {
+
+    /**
+     * A normalizer for ALPHABET that folds case iff FOLD, drops
+     * characters it cannot map to ALPHABET iff DROP, and maps the first
+     * character of each pair of characters in MAP to the second (MAP may
+     * be null).  The second character of each pair must be in ALPHABET.
+     */
+    Normalizer(Alphabet alphabet, boolean fold, boolean drop, String map) {
+        _alphabet = alphabet;
+        _drop = drop;
+        for (int c = 0; c < TABLE_SIZE; c += 1) {
+            char ch = (char) c;
+            char upper = Character.toUpperCase(ch),
+                lower = Character.toLowerCase(ch);
+            if (ch == ' ') {
+                _table[c] = DROP;
+            } else if (alphabet.contains(ch)) {
+                _table[c] = ch;
+            } else if (fold && alphabet.contains(upper)) {
+                _table[c] = upper;
+            } else if (fold && alphabet.contains(lower)) {
+                _table[c] = lower;
+            } else {
+                _table[c] = drop ? DROP : ch;
+            }
+        }
+        if (map != null) {
+            if (map.length() % 2 != 0) {
+                throw error("character map %s is not made of pairs", map);
+            }
+            for (int i = 0; i < map.length(); i += 2) {
+                char from = map.charAt(i), to = map.charAt(i + 1);
+                if (from >= TABLE_SIZE || !alphabet.contains(to)) {
+                    throw error("cannot map %c to %c", from, to);
+                }
+                _table[from] = to;
+            }
+        }
+    }
+
+    /**
+     * A normalizer for ALPHABET that only drops blanks, as Main always
+     * has.
+     */
+    Normalizer(Alphabet alphabet) {
+        this(alphabet, false, false, null);
+    }
+
+    /**
+     * Return what becomes of CH: the character to use, or DROP.
+     */
+    char map(char ch) {
+        if (ch < TABLE_SIZE) {
+            return _table[ch];
+        }
+        return _drop && !_alphabet.contains(ch) ? DROP : ch;
+    }
+
+    /**
+     * Store the normalization of TEXT into OUT, starting at START, and
+     * return the index just past it.  OUT must have room for all of
+     * TEXT.
+     */
+    int normalize(CharSequence text, char[] out, int start) {
+        int k = start;
+        for (int i = 0, n = text.length(); i < n; i += 1) {
+            char ch = map(text.charAt(i));
+            if (ch != DROP) {
+                out[k++] = ch;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Return TEXT normalized.  This reuses a buffer of mine, so that a
+     * normalizer used this way must be confined to one thread.
+     */
+    String normalize(String text) {
+        if (text.length() > _line.length) {
+            _line = new char[Math.max(text.length(), 2 * _line.length)];
+        }
+        return new String(_line, 0, normalize(text, _line, 0));
+    }
+
+    /**
+     * Marks dropped characters in _table.
+     */
+    static final char DROP = '\uffff';
+
+    /**
+     * Number of characters in _table.
+     */
+    private static final int TABLE_SIZE = 256;
+
+    /**
+     * The alphabet normalized to.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * True iff unmapped characters are dropped.
+     */
+    private final boolean _drop;
+    /**
+     * What becomes of each character below TABLE_SIZE.
+     */
+    private final char[] _table = new char[TABLE_SIZE];
+    /**
+     * Buffer reused by normalize(String).
+     */
+    private char[] _line = new char[TABLE_SIZE];
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for Normalizer.
+ *
+ * @author taiga
+ */
+public class NormalizerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDefault() {
+        Normalizer n = new Normalizer(UPPER);
+        assertEquals("HELLOWORLD", n.normalize(" HELLO WORLD "));
+        assertEquals("Hello,\tWORLD", n.normalize("Hello, \tWORLD"));
+        assertEquals("", n.normalize(""));
+    }
+
+    @Test
+    public void testOptions() {
+        Normalizer fold = new Normalizer(UPPER, true, false, null);
+        assertEquals("HELLO,WORLD", fold.normalize("Hello, world"));
+
+        Normalizer drop = new Normalizer(UPPER, true, true, "0O1I.X");
+        assertEquals("HELLOWORLDXIOX",
+                     drop.normalize("Hello,\tworld.\n10.\u00e9\u4e16"));
+
+        Normalizer lower =
+            new Normalizer(new Alphabet("abc"), true, true, null);
+        assertEquals("abca", lower.normalize("AbCd a"));
+
+        char[] buf = new char[8];
+        int end = new Normalizer(new Alphabet("abc"), false, false, "-c")
+            .normalize("a-b c", buf, 2);
+        assertEquals("acbc", new String(buf, 2, end - 2));
+    }
+
+    @Test
+    public void testBadMap() {
+        for (String map : new String[] { "0", "0o", "\u4e16A" }) {
+            try {
+                new Normalizer(UPPER, false, false, map);
+                fail("bad map " + map + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The stepping behavior of a configured Machine, starting from its
+ * current rotor positions: the number of steps before the sequence of
+ * rotor positions becomes periodic (its tail), the length of that cycle
+ * (its period), and where double steps occur.  The cycle is found with
+ * Brent's algorithm on packed rotor positions, so no state table is
+ * needed and the machine itself is left untouched.
+ *
+ * @author taiga
+ */
+class PeriodAnalysis {
+
+    /**
+     * Analyze the stepping of MACHINE from its current rotor positions.
+     */
+    PeriodAnalysis(Machine machine) {
+        _stepping = new Stepping(machine);
+        if (!_stepping.packable()) {
+            throw error("too many rotor positions to analyze");
+        }
+        _pos = new int[machine.numRotors()];
+        for (int k = 1; k < machine.numRotors(); k += 1) {
+            _pos[k] = machine.getRotor(k).setting();
+        }
+        _start = _stepping.pack(_pos);
+
+        long power = 1, period = 1;
+        long tortoise = _start, hare = next(_start);
+        while (tortoise != hare) {
+            if (power == period) {
+                tortoise = hare;
+                power *= 2;
+                period = 0;
+            }
+            hare = next(hare);
+            period += 1;
+        }
+
+        tortoise = hare = _start;
+        for (long i = 0; i < period; i += 1) {
+            hare = next(hare);
+        }
+        long tail = 0;
+        while (tortoise != hare) {
+            tortoise = next(tortoise);
+            hare = next(hare);
+            tail += 1;
+        }
+
+        _period = period;
+        _tail = tail;
+        _cycleStart = tortoise;
+        long doubleSteps = 0;
+        _stepping.unpack(_cycleStart, _pos);
+        for (long i = 0; i < period; i += 1) {
+            doubleSteps += _stepping.step(_pos);
+        }
+        _doubleSteps = doubleSteps;
+    }
+
+    /**
+     * Return the number of steps taken from the starting positions
+     * before the positions first reach the cycle.
+     */
+    long tail() {
+        return _tail;
+    }
+
+    /**
+     * Return the number of steps after which the rotor positions repeat.
+     */
+    long period() {
+        return _period;
+    }
+
+    /**
+     * Return the number of double steps in one period.
+     */
+    long doubleSteps() {
+        return _doubleSteps;
+    }
+
+    /**
+     * Return the packed rotor positions (see Stepping.pack) at which
+     * the cycle begins.
+     */
+    long cycleStart() {
+        return _cycleStart;
+    }
+
+    /**
+     * Return the stepping rules analyzed.
+     */
+    Stepping stepping() {
+        return _stepping;
+    }
+
+    /**
+     * Return the numbers of the steps (counting the first step from the
+     * starting positions as 1) during which a double step occurs, up to
+     * LIMIT of them, over the tail and the first period.
+     */
+    long[] doubleStepTimes(int limit) {
+        long[] result = new long[limit];
+        int n = 0;
+        _stepping.unpack(_start, _pos);
+        for (long t = 1; t <= _tail + _period && n < limit; t += 1) {
+            if (_stepping.step(_pos) > 0) {
+                result[n] = t;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Return the packed positions following STATE.
+     */
+    private long next(long state) {
+        _stepping.unpack(state, _pos);
+        _stepping.step(_pos);
+        return _stepping.pack(_pos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tail %d, period %d, %d double steps per period",
+                             _tail, _period, _doubleSteps);
+    }
+
+    /**
+     * Stepping rules of the machine.
+     */
+    private final Stepping _stepping;
+    /**
+     * Scratch rotor positions.
+     */
+    private final int[] _pos;
+    /**
+     * Packed starting positions.
+     */
+    private final long _start;
+    /**
+     * Packed positions at the start of the cycle.
+     */
+    private final long _cycleStart;
+    /**
+     * Length of the tail.
+     */
+    private final long _tail;
+    /**
+     * Length of the cycle.
+     */
+    private final long _period;
+    /**
+     * # double steps per period.
+     */
+    private final long _doubleSteps;
+}
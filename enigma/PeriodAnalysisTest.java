@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for the PeriodAnalysis class.
+ *
+ * @author taiga
+ */
+public class PeriodAnalysisTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a machine with rotors named NAMES at positions SETTING,
+     * where NOTCHES gives the notches of each moving rotor.
+     */
+    private Machine machine(String[] names, String[] notches,
+                            String setting) {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.put("Beta", new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        for (int i = 0; i < notches.length; i += 1) {
+            String name = names[names.length - notches.length + i];
+            rotors.put(name, new MovingRotor(name,
+                    new Permutation(NAVALA.get(name), UPPER), notches[i]));
+        }
+        Machine mach = new Machine(UPPER, names.length, notches.length,
+                                   rotors.values());
+        mach.insertRotors(names);
+        mach.setRotors(setting, "");
+        mach.setPlugboard(new Permutation("", UPPER));
+        return mach;
+    }
+
+    /**
+     * Return the rotor positions of MACH as a string.
+     */
+    private String positions(Machine mach) {
+        String result = "";
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            result += UPPER.toChar(mach.getRotor(k).setting());
+        }
+        return result;
+    }
+
+    /**
+     * Check the analysis of MACH against a step-by-step simulation.
+     */
+    private void checkAgainstSimulation(Machine mach) {
+        PeriodAnalysis analysis = new PeriodAnalysis(mach);
+        HashMap<String, Long> seen = new HashMap<>();
+        long t = 0;
+        String posn = positions(mach);
+        while (!seen.containsKey(posn)) {
+            seen.put(posn, t);
+            mach.convert(0);
+            t += 1;
+            posn = positions(mach);
+        }
+        long tail = seen.get(posn);
+        assertEquals("tail", tail, analysis.tail());
+        assertEquals("period", t - tail, analysis.period());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testThreeRotors() {
+        checkAgainstSimulation(machine(new String[] {"B", "III", "IV", "I"},
+                new String[] {"V", "J", "Q"}, "AAA"));
+    }
+
+    @Test
+    public void testFixedRotor() {
+        checkAgainstSimulation(
+                machine(new String[] {"B", "Beta", "III", "IV", "I"},
+                        new String[] {"V", "J", "Q"}, "AXLE"));
+    }
+
+    @Test
+    public void testMultipleNotches() {
+        checkAgainstSimulation(
+                machine(new String[] {"B", "Beta", "VI", "VII", "VIII"},
+                        new String[] {"ZM", "ZM", "ZM"}, "AAAA"));
+    }
+
+    @Test
+    public void testDoubleStepTimes() {
+        Machine mach = machine(new String[] {"B", "III", "IV", "I"},
+                new String[] {"V", "J", "Q"}, "AIO");
+        PeriodAnalysis analysis = new PeriodAnalysis(mach);
+        long[] times = analysis.doubleStepTimes(1);
+        assertEquals(1, times.length);
+        assertEquals(4, times[0]);
+    }
+}
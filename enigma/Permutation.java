@@ -1,10 +1,20 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
+import static enigma.EnigmaException.*;
+
 /**
  * Represents a permutation of a range of integers starting at 0 corresponding
  * to the characters of an alphabet.
+ * <p>
+ * A Permutation is immutable and backed by int arrays holding it and its
+ * inverse.  Its algebra (compose, inverse, power, conjugate, shift and
+ * cycleType) produces new Permutations from those arrays without going
+ * through cycle notation.  Static variants of the same operations work
+ * on bare int[] permutations, writing into buffers supplied by the
+ * caller, for loops that must not allocate.
  *
  * @author taiga
  */
@@ -72,6 +82,57 @@ class Permutation {
                 reversedList[i].put(fif, six);
             }
         }
+        _map = new int[alpabetSize];
+        _inverse = new int[alpabetSize];
+        for (int p = 0; p < alpabetSize; p += 1) {
+            _map[p] = lookup(orderedList, p);
+            _inverse[p] = lookup(reversedList, p);
+        }
+    }
+
+    /**
+     * Set this Permutation to MAP, mapping each p in 0 .. MAP.length-1 to
+     * MAP[p], as a permutation of ALPHABET.  MAP must be a permutation of
+     * 0 .. ALPHABET.size()-1.  It is copied.
+     */
+    Permutation(int[] map, Alphabet alphabet) {
+        this(alphabet, map.clone(), new int[map.length]);
+        if (map.length != alphabet.size()) {
+            throw error("permutation of %d values for an alphabet of %d",
+                        map.length, alphabet.size());
+        }
+        Arrays.fill(_inverse, -1);
+        for (int p = 0; p < map.length; p += 1) {
+            int q = map[p];
+            if (q < 0 || q >= map.length || _inverse[q] >= 0) {
+                throw error("not a permutation");
+            }
+            _inverse[q] = p;
+        }
+    }
+
+    /**
+     * A permutation of ALPHABET that is MAP, whose inverse is INVERSE.
+     * Both arrays become mine.
+     */
+    private Permutation(Alphabet alphabet, int[] map, int[] inverse) {
+        _alphabet = alphabet;
+        alpabetSize = map.length;
+        _map = map;
+        _inverse = inverse;
+    }
+
+    /**
+     * Return the value to which the cycle among LISTS containing P maps
+     * it, or P if none does.
+     */
+    private static int lookup(HashMap[] lists, int p) {
+        for (HashMap hash : lists) {
+            if (hash != null && hash.get(p) != null) {
+                return (int) hash.get(p);
+            }
+        }
+        return p;
     }
 
     /**
@@ -97,13 +158,7 @@ class Permutation {
      * alphabet size.
      */
     int permute(int p) {
-
-        for (HashMap hash : orderedList) {
-            if (hash != null && hash.get(wrap(p)) != null) {
-                return (int) hash.get(wrap(p));
-            }
-        }
-        return wrap(p);
+        return _map[wrap(p)];
     }
 
     /**
@@ -111,14 +166,7 @@ class Permutation {
      * to  C modulo the alphabet size.
      */
     int invert(int c) {
-        if (reversedList != null) {
-            for (HashMap hash : reversedList) {
-                if (hash != null && hash.get(wrap(c)) != null) {
-                    return (int) hash.get(wrap(c));
-                }
-            }
-        }
-        return wrap(c);
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -136,6 +184,29 @@ class Permutation {
         return _alphabet.toChar(invert(_alphabet.toInt(c)));
     }
 
+    /**
+     * Return this permutation in cycle notation, omitting the characters
+     * that map to themselves.
+     */
+    String cycles() {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[size()];
+        for (int i = 0; i < size(); i += 1) {
+            if (!seen[i] && permute(i) != i) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int c = i; !seen[c]; c = permute(c)) {
+                    seen[c] = true;
+                    result.append(_alphabet.toChar(c));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
     /**
      * Return the alphabet used to initialize this Permutation.
      */
@@ -143,33 +214,224 @@ class Permutation {
         return _alphabet;
     }
 
+    /**
+     * Return true iff this permutation maps every value to itself.
+     */
+    boolean identity() {
+        for (int i = 0; i < size(); i += 1) {
+            if (permute(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Return true iff this permutation is a derangement (i.e., a
      * permutation for which no value maps to itself).
      */
     boolean derangement() {
-        for (int i = 0; i < size(); i++) {
-            if (!check(i)) {
+        for (int i = 0; i < size(); i += 1) {
+            if (_map[i] == i) {
                 return false;
             }
         }
-        return true;
+        return size() > 0;
+    }
+
+    /**
+     * Return my mapping as an array: element p is permute(p).
+     */
+    int[] toArray() {
+        return _map.clone();
+    }
+
+    /**
+     * Return the permutation that applies me and then NEXT, which must
+     * have my size.
+     */
+    Permutation compose(Permutation next) {
+        checkSize(next);
+        int[] map = new int[size()];
+        compose(_map, next._map, map);
+        int[] inverse = new int[size()];
+        compose(next._inverse, _inverse, inverse);
+        return new Permutation(_alphabet, map, inverse);
+    }
+
+    /**
+     * Return my inverse.
+     */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse.clone(), _map.clone());
+    }
+
+    /**
+     * Return me raised to the power K: me applied K times, or my
+     * inverse applied -K times if K is negative.
+     */
+    Permutation power(long k) {
+        int[] map = new int[size()];
+        int[] inverse = new int[size()];
+        boolean[] seen = new boolean[size()];
+        power(_map, k, map, seen);
+        invert(map, inverse);
+        return new Permutation(_alphabet, map, inverse);
     }
 
-    boolean check(int i) {
-        if (orderedList.length <= 1) {
-            return false;
+    /**
+     * Return my conjugate by BY, which must have my size: the
+     * permutation mapping BY.permute(p) to BY.permute(permute(p)).
+     */
+    Permutation conjugate(Permutation by) {
+        checkSize(by);
+        int[] map = new int[size()];
+        int[] inverse = new int[size()];
+        conjugate(_map, by._map, map);
+        conjugate(_inverse, by._map, inverse);
+        return new Permutation(_alphabet, map, inverse);
+    }
+
+    /**
+     * Return my conjugate by a shift of K: the permutation mapping p to
+     * permute(p + K) - K, modulo my size.  This is what a rotor wired as
+     * I does at offset K.
+     */
+    Permutation shift(int k) {
+        int[] map = new int[size()];
+        int[] inverse = new int[size()];
+        shift(_map, k, map);
+        shift(_inverse, k, inverse);
+        return new Permutation(_alphabet, map, inverse);
+    }
+
+    /**
+     * Return my cycle type: an array of size() + 1 elements whose
+     * element L is the number of my cycles of length L.
+     */
+    int[] cycleType() {
+        int[] counts = new int[size() + 1];
+        cycleType(_map, new boolean[size()], counts, 0);
+        return counts;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Permutation
+            && Arrays.equals(_map, ((Permutation) obj)._map);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_map);
+    }
+
+    /**
+     * Check that OTHER has my size.
+     */
+    private void checkSize(Permutation other) {
+        if (other.size() != size()) {
+            throw error("permutations of different sizes");
+        }
+    }
+
+    /**
+     * Store into OUT the permutation applying FIRST and then SECOND:
+     * OUT[p] = SECOND[FIRST[p]].  OUT may be FIRST but not SECOND.
+     */
+    static void compose(int[] first, int[] second, int[] out) {
+        for (int p = 0; p < first.length; p += 1) {
+            out[p] = second[first[p]];
+        }
+    }
+
+    /**
+     * Store the inverse of PERM into OUT, which must not be PERM.
+     */
+    static void invert(int[] perm, int[] out) {
+        for (int p = 0; p < perm.length; p += 1) {
+            out[perm[p]] = p;
+        }
+    }
+
+    /**
+     * Store PERM raised to the power K into OUT, which must not be PERM,
+     * using SEEN as scratch space.  Each cycle of PERM is walked once
+     * and rotated by K modulo its length, so the cost does not depend
+     * on K.
+     */
+    static void power(int[] perm, long k, int[] out, boolean[] seen) {
+        Arrays.fill(seen, false);
+        for (int c = 0; c < perm.length; c += 1) {
+            if (seen[c]) {
+                continue;
+            }
+            int len = 0;
+            for (int x = c; !seen[x]; x = perm[x]) {
+                seen[x] = true;
+                len += 1;
+            }
+            int steps = (int) Math.floorMod(k, (long) len);
+            int y = c;
+            for (int i = 0; i < steps; i += 1) {
+                y = perm[y];
+            }
+            int x = c;
+            for (int i = 0; i < len; i += 1) {
+                out[x] = y;
+                x = perm[x];
+                y = perm[y];
+            }
         }
-        for (HashMap hash : orderedList) {
-            if (hash != null) {
-                if (hash.get(i) == null) {
-                    continue;
-                } else if ((int) hash.get(i) != i) {
-                    return true;
+    }
+
+    /**
+     * Store into OUT the conjugate of PERM by BY, mapping BY[p] to
+     * BY[PERM[p]].  OUT must be neither PERM nor BY.
+     */
+    static void conjugate(int[] perm, int[] by, int[] out) {
+        for (int p = 0; p < perm.length; p += 1) {
+            out[by[p]] = by[perm[p]];
+        }
+    }
+
+    /**
+     * Store into OUT the conjugate of PERM by a shift of K, mapping p to
+     * PERM[p + K] - K modulo PERM.length.  OUT must not be PERM.
+     */
+    static void shift(int[] perm, int k, int[] out) {
+        int n = perm.length;
+        k = Math.floorMod(k, n);
+        for (int p = 0; p < n; p += 1) {
+            int x = p + k;
+            if (x >= n) {
+                x -= n;
+            }
+            x = perm[x] - k;
+            if (x < 0) {
+                x += n;
+            }
+            out[p] = x;
+        }
+    }
+
+    /**
+     * Add to COUNTS[BASE + L] the number of cycles of length L of PERM,
+     * using SEEN as scratch space.
+     */
+    static void cycleType(int[] perm, boolean[] seen, int[] counts,
+                          int base) {
+        Arrays.fill(seen, false);
+        for (int c = 0; c < perm.length; c += 1) {
+            if (!seen[c]) {
+                int len = 0;
+                for (int x = c; !seen[x]; x = perm[x]) {
+                    seen[x] = true;
+                    len += 1;
                 }
+                counts[base + len] += 1;
             }
         }
-        return false;
     }
 
     /**
@@ -192,4 +454,12 @@ class Permutation {
      * inverse hashmap.
      */
     private HashMap[] reversedList;
+    /**
+     * My mapping: element p is permute(p).
+     */
+    private final int[] _map;
+    /**
+     * My inverse: element c is invert(c).
+     */
+    private final int[] _inverse;
 }
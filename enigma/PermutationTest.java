@@ -97,6 +97,14 @@ public class PermutationTest {
         String cyclesFour = "(ABCDEFGHIJKLMNOPQRSTUVWXY)";
         Permutation permFour = new Permutation(cyclesFour, alphabet);
         assertFalse(permFour.derangement());
+
+        String cyclesFive = "(ABCDEFGHIJKLMNOPQRSTUVWXYZ)";
+        Permutation permFive = new Permutation(cyclesFive, alphabet);
+        assertTrue(permFive.derangement());
+        Permutation fromArray =
+            new Permutation(permFive.toArray(), alphabet);
+        assertEquals(permFive, fromArray);
+        assertTrue(fromArray.derangement());
     }
 
     @Test
@@ -126,5 +134,69 @@ public class PermutationTest {
         assertEquals('Z', perm.invert('Z'));
         assertFalse(perm.derangement());
     }
-}
 
+    @Test
+    public void testIdentity() {
+        Alphabet alphabet = new Alphabet();
+        assertTrue(new Permutation("", alphabet).identity());
+        assertTrue(new Permutation("(A) (B)", alphabet).identity());
+        assertFalse(new Permutation("(AB)", alphabet).identity());
+    }
+
+    @Test
+    public void testAlgebra() {
+        Alphabet alphabet = new Alphabet();
+        Permutation p = new Permutation(NAVALA.get("I"), alphabet);
+        Permutation q = new Permutation(NAVALA.get("IV"), alphabet);
+        Permutation pq = p.compose(q);
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(q.permute(p.permute(c)), pq.permute(c));
+            assertEquals(c, pq.invert(pq.permute(c)));
+            assertEquals(p.invert(c), p.inverse().permute(c));
+        }
+        assertTrue(p.compose(p.inverse()).identity());
+        assertEquals(p.compose(p).compose(p), p.power(3));
+        assertEquals(p.inverse().power(2), p.power(-2));
+        assertTrue(p.power(0).identity());
+        assertTrue(p.power(10 * 4 * 3 * 2 * 7).identity());
+
+        Permutation shifted = p.shift(5);
+        Permutation by = new Permutation("(ABCDEFGHIJKLMNOPQRSTUVWXYZ)",
+                                         alphabet).power(-5);
+        assertEquals(shifted, p.conjugate(by));
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(p.wrap(p.permute(c + 5) - 5), shifted.permute(c));
+            assertEquals(c, shifted.invert(shifted.permute(c)));
+        }
+
+        int[] type = p.cycleType();
+        assertEquals(27, type.length);
+        assertEquals(1, type[10]);
+        assertEquals(2, type[4]);
+        assertEquals(1, type[3]);
+        assertEquals(2, type[2]);
+        assertEquals(1, type[1]);
+        assertEquals(type.length, p.shift(3).cycleType().length);
+        assertArrayEquals(type, p.conjugate(q).cycleType());
+    }
+
+    @Test
+    public void testFromArray() {
+        Alphabet alphabet = new Alphabet();
+        Permutation p = new Permutation(NAVALA.get("II"), alphabet);
+        Permutation copy = new Permutation(p.toArray(), alphabet);
+        assertEquals(p, copy);
+        assertEquals(p.cycles(), copy.cycles());
+        assertFalse(copy.derangement());
+        assertTrue(new Permutation(NAVALA.get("B"), alphabet).compose(
+                       new Permutation("", alphabet)).derangement());
+        int[] bad = p.toArray();
+        bad[0] = bad[1];
+        try {
+            new Permutation(bad, alphabet);
+            fail("accepted a non-permutation");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Main's processing of an input file split into three stages on
+ * threads of their own, so that reading, converting and writing
+ * overlap: a reader parsing the input into batches of message lines,
+ * which it normalizes as it copies them in, a converter that owns the
+ * Machine and sets it up and converts the batches, and a writer
+ * formatting the converted lines into groups of five.  The stages hand
+ * batches on through Rings, and the writer hands them back to the
+ * reader through a third Ring, so that a fixed set of buffers is reused
+ * for the whole input.  The output is exactly that of Main's sequential
+ * processing, including the output preceding an error.
+ * <p>
+ * After run(), report() tells how busy each stage was, that is, the
+ * fraction of its time it did not spend waiting on its Rings, and how
+ * full the Rings were.  The busiest stage is the bottleneck.
+ *
+ * @author taiga
+ */
+class Pipeline {
+
+    /**
+     * A pipeline converting the sections of INPUT, its message lines
+     * cleaned by NORMALIZER, with MACHINE, whose setting cache is
+     * SETTINGS, and writing the results to OUTPUT.  Records statistics
+     * in STATS, unless it is null.
+     */
+    Pipeline(Scanner input, Machine machine, SettingCache settings,
+             Normalizer normalizer, Stats stats, OutputStream output) {
+        _input = input;
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _settings = settings;
+        _normalizer = normalizer;
+        _stats = stats;
+        _output = output;
+        for (int i = 0; i < BATCHES; i += 1) {
+            _free.put(new Batch());
+        }
+    }
+
+    /**
+     * Process my input, returning once all of it is written.  Throws
+     * the first exception raised by any stage, after writing the output
+     * for the lines that preceded it.
+     */
+    void run() {
+        Thread[] stages = {
+            new Thread(this::read, "enigma-read"),
+            new Thread(this::convert, "enigma-convert"),
+            new Thread(this::write, "enigma-write")
+        };
+        for (Thread stage : stages) {
+            stage.start();
+        }
+        try {
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException excp) {
+            cancel();
+            throw error("interrupted");
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /**
+     * Print the utilization of each stage and the depth of each queue
+     * of my last run to OUT.
+     */
+    void report(PrintStream out) {
+        reportStage(out, "read", _readNanos,
+                    _free.takeWaitNanos() + _parsed.putWaitNanos());
+        reportStage(out, "convert", _convertNanos,
+                    _parsed.takeWaitNanos() + _converted.putWaitNanos());
+        reportStage(out, "write", _writeNanos,
+                    _converted.takeWaitNanos() + _free.putWaitNanos());
+        reportQueue(out, "read->convert", _parsed);
+        reportQueue(out, "convert->write", _converted);
+    }
+
+    /**
+     * Print to OUT the utilization of stage NAME, which ran for NANOS
+     * and spent WAITNANOS of them waiting.
+     */
+    private void reportStage(PrintStream out, String name, long nanos,
+                             long waitNanos) {
+        double busy = nanos == 0 ? 0 : 100.0 * (nanos - waitNanos) / nanos;
+        out.printf("%-18s%12.3f ms, %5.1f%% busy%n", name + " stage:",
+                   (nanos - waitNanos) / NANOS_PER_MILLI, busy);
+    }
+
+    /**
+     * Print to OUT the depth and waits of QUEUE, named NAME.
+     */
+    private void reportQueue(PrintStream out, String name,
+                             Ring<Batch> queue) {
+        out.printf("%-18smean depth %.1f of %d, %d batches, %d full, "
+                   + "%d empty%n", name + ":", queue.meanDepth(),
+                   queue.capacity(), queue.puts(), queue.fullWaits(),
+                   queue.emptyWaits());
+    }
+
+    /**
+     * Record FAILURE, unless an earlier failure has been.  The stages
+     * downstream of the failed one still drain what it passed on.
+     */
+    private synchronized void record(RuntimeException failure) {
+        if (_failure == null) {
+            _failure = failure;
+        }
+    }
+
+    /**
+     * Stop all stages from waiting on one another.
+     */
+    private void cancel() {
+        _free.cancel();
+        _parsed.cancel();
+        _converted.cancel();
+    }
+
+    /**
+     * The reader stage: parse my input into batches, in the manner of
+     * Main.process, and pass them to the converter.
+     */
+    private void read() {
+        long start = System.nanoTime();
+        Batch batch = _free.take();
+        try {
+            while (batch != null && _input.hasNext()) {
+                String set = _input.nextLine();
+                while (set.equals("")) {
+                    set = _input.nextLine();
+                    batch.add("", _normalizer);
+                }
+                set = Main.settingLine(set);
+                if (batch.setting != null || batch.lines > 0) {
+                    batch = pass(batch);
+                    if (batch == null) {
+                        break;
+                    }
+                }
+                batch.setting = set;
+                while (_input.hasNextLine() && !_input.hasNext("\\*")) {
+                    if (batch.full()) {
+                        batch = pass(batch);
+                        if (batch == null) {
+                            break;
+                        }
+                    }
+                    batch.add(_input.nextLine(), _normalizer);
+                }
+            }
+        } catch (RuntimeException excp) {
+            record(excp);
+        }
+        if (batch != null) {
+            batch.last = true;
+            _parsed.put(batch);
+        }
+        _readNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Pass BATCH to the converter and return an empty batch, or null if
+     * the pipeline has failed.
+     */
+    private Batch pass(Batch batch) {
+        if (_failure != null || !_parsed.put(batch)) {
+            return null;
+        }
+        return _free.take();
+    }
+
+    /**
+     * The converter stage: set up my machine for and convert each batch
+     * from the reader, and pass it to the writer.
+     */
+    private void convert() {
+        long start = System.nanoTime();
+        while (true) {
+            Batch batch = _parsed.take();
+            if (batch == null) {
+                break;
+            }
+            int k = 0;
+            try {
+                if (batch.setting != null) {
+                    Main.setUpSection(_machine, _settings, batch.setting,
+                                      _stats);
+                }
+                for (; k < batch.lines; k += 1) {
+                    convertLine(batch, k);
+                }
+            } catch (RuntimeException excp) {
+                record(excp);
+                _free.cancel();
+                _parsed.cancel();
+                batch.lines = k;
+                batch.last = true;
+            }
+            if (!_converted.put(batch) || batch.last) {
+                break;
+            }
+        }
+        _convertNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Convert line #K of BATCH.
+     */
+    private void convertLine(Batch batch, int k) {
+        int from = batch.start(k), to = batch.ends[k];
+        for (int i = from; i < to; i += 1) {
+            if (!_alphabet.contains(batch.text[i])) {
+                throw error("char not in the alphabet");
+            }
+        }
+        long start = System.nanoTime();
+        _machine.convert(batch.text, from, to);
+        if (_stats != null) {
+            _stats.lineConverted(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The writer stage: write the lines of each converted batch in
+     * groups of five and return the batch to the reader.
+     */
+    private void write() {
+        long start = System.nanoTime();
+        Writer out = new BufferedWriter(new OutputStreamWriter(_output),
+                                        OUTPUT_BUFFER);
+        String newline = System.lineSeparator();
+        char[] line = new char[0];
+        try {
+            while (true) {
+                Batch batch = _converted.take();
+                if (batch == null) {
+                    break;
+                }
+                for (int k = 0; k < batch.lines; k += 1) {
+                    int from = batch.start(k), n = batch.ends[k] - from;
+                    int size = n + n / GROUP + newline.length();
+                    if (line.length < size) {
+                        line = new char[Math.max(size, 2 * line.length)];
+                    }
+                    int m = 0;
+                    for (int i = 0; i < n; i += 1) {
+                        line[m++] = batch.text[from + i];
+                        if ((i + 1) % GROUP == 0) {
+                            line[m++] = ' ';
+                        }
+                    }
+                    newline.getChars(0, newline.length(), line, m);
+                    out.write(line, 0, size);
+                    if (_stats != null) {
+                        _stats.outputWritten(size);
+                    }
+                }
+                boolean last = batch.last;
+                batch.clear();
+                _free.put(batch);
+                if (last) {
+                    break;
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            record(error("could not write output"));
+            cancel();
+        }
+        _writeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * A reusable buffer holding a run of message lines, perhaps preceded
+     * by the setting line that starts their section.
+     */
+    private static class Batch {
+
+        /**
+         * Return true iff I should be passed on before adding a line.
+         */
+        boolean full() {
+            return lines == ends.length || length >= BATCH_CHARS;
+        }
+
+        /**
+         * Append LINE, as normalized by NORMALIZER, to my lines.
+         */
+        void add(String line, Normalizer normalizer) {
+            if (lines == ends.length) {
+                ends = Arrays.copyOf(ends, 2 * ends.length);
+            }
+            if (length + line.length() > text.length) {
+                text = Arrays.copyOf(text, Math.max(length + line.length(),
+                                                    2 * text.length));
+            }
+            length = normalizer.normalize(line, text, length);
+            ends[lines] = length;
+            lines += 1;
+        }
+
+        /**
+         * Return the index in text of the start of line #K.
+         */
+        int start(int k) {
+            return k == 0 ? 0 : ends[k - 1];
+        }
+
+        /**
+         * Empty me for reuse.
+         */
+        void clear() {
+            setting = null;
+            lines = length = 0;
+            last = false;
+        }
+
+        /**
+         * Settings to set up before converting my lines, or null.
+         */
+        String setting;
+        /**
+         * The characters of my lines, end to end.
+         */
+        char[] text = new char[BATCH_CHARS];
+        /**
+         * Line #K is text[start(K) .. ends[K]-1].
+         */
+        int[] ends = new int[BATCH_LINES];
+        /**
+         * Number of lines.
+         */
+        int lines;
+        /**
+         * Number of characters in text.
+         */
+        int length;
+        /**
+         * True iff no batch follows me.
+         */
+        boolean last;
+    }
+
+    /**
+     * Number of batches, and capacity of each queue.
+     */
+    static final int BATCHES = 16;
+    /**
+     * Number of characters past which a batch is passed on.
+     */
+    static final int BATCH_CHARS = 8192;
+    /**
+     * Number of lines at which a batch is passed on.
+     */
+    static final int BATCH_LINES = 256;
+    /**
+     * Size of the writer's output buffer, in characters.
+     */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    /**
+     * Number of letters in each output group.
+     */
+    private static final int GROUP = 5;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Source of input messages.
+     */
+    private final Scanner _input;
+    /**
+     * The machine, used only by the converter.
+     */
+    private final Machine _machine;
+    /**
+     * Its alphabet.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Setting cache of _machine.
+     */
+    private final SettingCache _settings;
+    /**
+     * Cleans message lines as they are read.
+     */
+    private final Normalizer _normalizer;
+    /**
+     * Statistics being recorded, or null.
+     */
+    private final Stats _stats;
+    /**
+     * Destination of the converted messages.
+     */
+    private final OutputStream _output;
+    /**
+     * Empty batches, from the writer to the reader.
+     */
+    private final Ring<Batch> _free = new Ring<>(BATCHES);
+    /**
+     * Parsed batches, from the reader to the converter.
+     */
+    private final Ring<Batch> _parsed = new Ring<>(BATCHES);
+    /**
+     * Converted batches, from the converter to the writer.
+     */
+    private final Ring<Batch> _converted = new Ring<>(BATCHES);
+    /**
+     * First exception raised by a stage, or null.
+     */
+    private volatile RuntimeException _failure;
+    /**
+     * Running times of the stages of the last run.
+     */
+    private long _readNanos, _convertNanos, _writeNanos;
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for Pipeline and Ring.
+ *
+ * @author taiga
+ */
+public class PipelineTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a five-slot machine with rotors B, Beta, I, III and IV.
+     */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "I", "III", "IV");
+    }
+
+    /**
+     * Return the output of Main for the section setting SETTINGS and
+     * message lines LINES, as converted by a fresh machine.
+     */
+    private String expected(String settings, String... lines) {
+        Machine mach = machine();
+        Main.setUp(mach, settings);
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            String msg = mach.convert(line.replaceAll(" ", ""));
+            for (int i = 0; i < msg.length(); i += 1) {
+                result.append(msg.charAt(i));
+                if ((i + 1) % 5 == 0) {
+                    result.append(' ');
+                }
+            }
+            result.append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Run a pipeline over INPUT, putting its output into OUT and
+     * returning the exception it throws, or null.
+     */
+    private RuntimeException run(String input, ByteArrayOutputStream out) {
+        Machine mach = machine();
+        Pipeline pipeline =
+            new Pipeline(new Scanner(input), mach, new SettingCache(mach, 4),
+                         new Normalizer(UPPER), null, out);
+        try {
+            pipeline.run();
+            return null;
+        } catch (RuntimeException excp) {
+            return excp;
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRing() throws InterruptedException {
+        Ring<Integer> ring = new Ring<>(8);
+        int[] received = new int[10000];
+        Thread consumer = new Thread(() -> {
+            for (int i = 0; i < received.length; i += 1) {
+                received[i] = ring.take();
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < received.length; i += 1) {
+            assertTrue(ring.put(i));
+        }
+        consumer.join();
+        for (int i = 0; i < received.length; i += 1) {
+            assertEquals(i, received[i]);
+        }
+        assertEquals(received.length, ring.puts());
+        assertTrue(ring.meanDepth() <= ring.capacity());
+
+        assertTrue(ring.put(-1));
+        ring.cancel();
+        assertNull(ring.take());
+        assertFalse(ring.put(-2));
+    }
+
+    @Test
+    public void testPipeline() {
+        Random random = new Random(47);
+        String[] lines = new String[3 * Pipeline.BATCH_LINES];
+        for (int i = 0; i < lines.length; i += 1) {
+            StringBuilder line = new StringBuilder();
+            for (int n = random.nextInt(60); n > 0; n -= 1) {
+                line.append(random.nextInt(6) == 0 ? ' '
+                            : (char) ('A' + random.nextInt(26)));
+            }
+            lines[i] = line.toString();
+        }
+        String set1 = "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        String set2 = "B Beta I IV III QEPA";
+        String input = "\n* " + set1 + "\n" + String.join("\n", lines)
+            + "\n\n* " + set2 + "\nHELLO WORLD\n\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertNull(run(input, out));
+        String[] first = new String[lines.length + 1];
+        System.arraycopy(lines, 0, first, 0, lines.length);
+        first[lines.length] = "";
+        assertEquals(System.lineSeparator() + expected(set1, first)
+                     + expected(set2, "HELLO WORLD", ""),
+                     out.toString());
+    }
+
+    @Test
+    public void testPipelineError() {
+        String set = "B Beta III IV I AXLE";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RuntimeException excp =
+            run("* " + set + "\nHELLO\nWORLD\nHEL1O\nMORE\n", out);
+        assertTrue(excp instanceof EnigmaException);
+        assertEquals(expected(set, "HELLO", "WORLD"), out.toString());
+
+        out.reset();
+        excp = run("HELLO\n* " + set + "\n", out);
+        assertTrue(excp instanceof EnigmaException);
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,235 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A bounded queue passing items from exactly one producer thread to
+ * exactly one consumer thread without locks.  The producer alone
+ * advances the tail and the consumer alone advances the head, each
+ * publishing its counter with a release store that the other reads
+ * with an acquire load.  The consumer keeps its last view of the tail,
+ * rereading it only when the ring seems empty; the producer reads the
+ * head at each put, which also gives it the current depth of the
+ * ring.  A side that must wait spins briefly and then parks
+ * for short periods, so that the other side gets the processor when
+ * there are fewer processors than threads.
+ * <p>
+ * The ring records how long each side waited and, at each put, how
+ * many items were already queued.  Each side updates only its own
+ * figures; they may be read once both threads are done (e.g., have
+ * been joined).
+ *
+ * @author taiga
+ */
+class Ring<T> {
+
+    /**
+     * An empty ring holding up to CAPACITY items, a power of 2.
+     */
+    Ring(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw error("ring capacity %d is not a power of 2", capacity);
+        }
+        _slots = new Object[capacity];
+        _mask = capacity - 1;
+    }
+
+    /**
+     * Return the number of items I can hold.
+     */
+    int capacity() {
+        return _slots.length;
+    }
+
+    /**
+     * Add ITEM at my tail, waiting while I am full.  Returns false
+     * without adding ITEM if I am cancelled.  Called only by the
+     * producer.
+     */
+    boolean put(T item) {
+        if (_cancelled) {
+            return false;
+        }
+        long tail = _tail.getPlain();
+        long head = _head.getAcquire();
+        if (tail - head == _slots.length) {
+            long start = System.nanoTime();
+            _fullWaits += 1;
+            for (int spins = 0; tail - head == _slots.length; spins += 1) {
+                if (_cancelled) {
+                    return false;
+                }
+                pause(spins);
+                head = _head.getAcquire();
+            }
+            _putWaitNanos += System.nanoTime() - start;
+        }
+        _puts += 1;
+        _depthSum += tail - head;
+        _slots[(int) tail & _mask] = item;
+        _tail.setRelease(tail + 1);
+        return true;
+    }
+
+    /**
+     * Remove and return the item at my head, waiting while I am empty.
+     * Returns null if I am cancelled, even if items remain.  Called only
+     * by the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    T take() {
+        if (_cancelled) {
+            return null;
+        }
+        long head = _head.getPlain();
+        if (head == _tailSeen) {
+            _tailSeen = _tail.getAcquire();
+            if (head == _tailSeen) {
+                long start = System.nanoTime();
+                _emptyWaits += 1;
+                for (int spins = 0; head == _tailSeen; spins += 1) {
+                    if (_cancelled) {
+                        return null;
+                    }
+                    pause(spins);
+                    _tailSeen = _tail.getAcquire();
+                }
+                _takeWaitNanos += System.nanoTime() - start;
+            }
+        }
+        int slot = (int) head & _mask;
+        T result = (T) _slots[slot];
+        _slots[slot] = null;
+        _head.setRelease(head + 1);
+        return result;
+    }
+
+    /**
+     * Make waiting and future calls of put and take fail, whether or
+     * not I have room or items, so that neither side waits for, or
+     * keeps working for, a partner that has given up.
+     */
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /**
+     * Wait briefly, having already waited SPINS times.
+     */
+    private static void pause(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Return the number of items put.
+     */
+    long puts() {
+        return _puts;
+    }
+
+    /**
+     * Return the mean number of items already queued at each put.
+     */
+    double meanDepth() {
+        return _puts == 0 ? 0 : (double) _depthSum / _puts;
+    }
+
+    /**
+     * Return the number of puts that found me full.
+     */
+    long fullWaits() {
+        return _fullWaits;
+    }
+
+    /**
+     * Return the number of takes that found me empty.
+     */
+    long emptyWaits() {
+        return _emptyWaits;
+    }
+
+    /**
+     * Return the total time the producer waited for room.
+     */
+    long putWaitNanos() {
+        return _putWaitNanos;
+    }
+
+    /**
+     * Return the total time the consumer waited for items.
+     */
+    long takeWaitNanos() {
+        return _takeWaitNanos;
+    }
+
+    /**
+     * Number of busy waits before a waiting side starts parking.
+     */
+    private static final int SPINS = 100;
+    /**
+     * Length of each park of a waiting side.
+     */
+    private static final long PARK_NANOS = 20_000;
+
+    /**
+     * The items, item #I in _slots[I & _mask].
+     */
+    private final Object[] _slots;
+    /**
+     * Capacity - 1.
+     */
+    private final int _mask;
+    /**
+     * Number of items ever taken.
+     */
+    private final AtomicLong _head = new AtomicLong();
+    /**
+     * Number of items ever put.
+     */
+    private final AtomicLong _tail = new AtomicLong();
+    /**
+     * True once I am cancelled.
+     */
+    private volatile boolean _cancelled;
+
+    /* The following belong to the producer. */
+
+    /**
+     * Number of items put.
+     */
+    private long _puts;
+    /**
+     * Sum over puts of the number of items queued.
+     */
+    private long _depthSum;
+    /**
+     * Number of puts that waited.
+     */
+    private long _fullWaits;
+    /**
+     * Time spent waiting in put.
+     */
+    private long _putWaitNanos;
+
+    /* The following belong to the consumer. */
+
+    /**
+     * The consumer's last view of _tail.
+     */
+    private long _tailSeen;
+    /**
+     * Number of takes that waited.
+     */
+    private long _emptyWaits;
+    /**
+     * Time spent waiting in take.
+     */
+    private long _takeWaitNanos;
+}
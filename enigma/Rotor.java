@@ -107,6 +107,9 @@ class Rotor {
      * according to my permutation.
      */
     int convertForward(int p) {
+        if (_tables != null && !Main.verbose()) {
+            return _tables.forward(_tableIndex, offset(), p);
+        }
         int num = p + _setting - optional();
         int enter = permutation().permute(permutation().wrap(num));
         int result = permutation().wrap(enter - _setting + optional());
@@ -122,6 +125,9 @@ class Rotor {
      * according to the inverse of my permutation.
      */
     int convertBackward(int e) {
+        if (_tables != null && !Main.verbose()) {
+            return _tables.backward(_tableIndex, offset(), e);
+        }
         int num = e + _setting - optional();
         int enter = permutation().invert(permutation().wrap(num));
         int result = permutation().wrap(enter - _setting + optional());
@@ -132,6 +138,24 @@ class Rotor {
         return result;
     }
 
+    /**
+     * Convert through rotor #INDEX of TABLES, which must have my wiring,
+     * rather than through my permutation, or stop using tables if TABLES
+     * is null.
+     */
+    void setTables(RotorTables tables, int index) {
+        _tables = tables;
+        _tableIndex = index;
+    }
+
+    /**
+     * Return my setting less my ring setting, in 0 .. size()-1.
+     */
+    private int offset() {
+        int offset = _setting - optional;
+        return offset < 0 ? offset + size() : offset;
+    }
+
     /**
      * Returns the positions of the notches, as a string giving the letters
      * on the ring at which they occur.
@@ -154,6 +178,14 @@ class Rotor {
     void advance() {
     }
 
+    /**
+     * Return a new rotor like me, at its 0 setting, sharing my
+     * permutation.
+     */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -177,4 +209,12 @@ class Rotor {
      * optional setting.
      */
     private int optional;
+    /**
+     * Tables I convert through, or null.
+     */
+    private RotorTables _tables;
+    /**
+     * My index in _tables.
+     */
+    private int _tableIndex;
 }
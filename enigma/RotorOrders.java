@@ -0,0 +1,125 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The rotor orders that can be inserted into a Machine: a reflector in
+ * slot 0, non-moving rotors in the slots to the left of the pawls and
+ * moving rotors in the numPawls() rightmost slots, no rotor being used
+ * twice.  Orders are numbered from 0 and represented as indices into
+ * the machine's allRotors().
+ *
+ * @author taiga
+ */
+class RotorOrders {
+
+    /**
+     * The rotor orders of MACHINE.
+     */
+    RotorOrders(Machine machine) {
+        _rotors = machine.allRotors();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _orders = new ArrayList<>();
+        fill(new int[_numRotors], 0, new boolean[_rotors.length]);
+        if (_orders.isEmpty()) {
+            throw error("no rotor order fits the machine");
+        }
+    }
+
+    /**
+     * Add to _orders all orders beginning with the K rotors already in
+     * ORDER, where USED marks the rotors taken.
+     */
+    private void fill(int[] order, int k, boolean[] used) {
+        if (k == _numRotors) {
+            _orders.add(order.clone());
+            return;
+        }
+        for (int i = 0; i < _rotors.length; i += 1) {
+            if (!used[i] && fits(_rotors[i], k)) {
+                used[i] = true;
+                order[k] = i;
+                fill(order, k + 1, used);
+                used[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Return true iff ROTOR may go in slot K.
+     */
+    private boolean fits(Rotor rotor, int k) {
+        if (k == 0) {
+            return rotor.reflecting();
+        } else if (k < _numRotors - _numPawls) {
+            return !rotor.rotates() && !rotor.reflecting();
+        } else {
+            return rotor.rotates();
+        }
+    }
+
+    /**
+     * Return the number of rotor orders.
+     */
+    int size() {
+        return _orders.size();
+    }
+
+    /**
+     * Return all the rotors available to the machine.
+     */
+    Rotor[] rotors() {
+        return _rotors;
+    }
+
+    /**
+     * Return order #I as indices into rotors().
+     */
+    int[] get(int i) {
+        return _orders.get(i);
+    }
+
+    /**
+     * Return the rotors of order #I, slot by slot.
+     */
+    Rotor[] slots(int i) {
+        int[] order = get(i);
+        Rotor[] result = new Rotor[order.length];
+        for (int k = 0; k < order.length; k += 1) {
+            result[k] = _rotors[order[k]];
+        }
+        return result;
+    }
+
+    /**
+     * Return the names of the rotors of order #I, slot by slot.
+     */
+    String[] names(int i) {
+        int[] order = get(i);
+        String[] result = new String[order.length];
+        for (int k = 0; k < order.length; k += 1) {
+            result[k] = _rotors[order[k]].name();
+        }
+        return result;
+    }
+
+    /**
+     * All available rotors.
+     */
+    private final Rotor[] _rotors;
+    /**
+     * # of rotor slots.
+     */
+    private final int _numRotors;
+    /**
+     * # of pawls.
+     */
+    private final int _numPawls;
+    /**
+     * The orders, as indices into _rotors.
+     */
+    private final ArrayList<int[]> _orders;
+}
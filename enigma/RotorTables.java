@@ -0,0 +1,266 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Per-position wiring tables of a set of rotors, held off the Java heap
+ * in a Segment.  For rotor #R, offset O (its setting less its ring
+ * setting) and character C, forward(R, O, C) and backward(R, O, C) are
+ * the results of passing C through the rotor forward and backward, so
+ * that a rotor given its tables (see Rotor.setTables) converts by one
+ * lookup instead of consulting its Permutation.
+ * <p>
+ * Tables may be kept in a file, where processes using the same rotors
+ * share them through the page cache.  The file holds the magic number,
+ * the length of the header, a flag telling whether the tables are big
+ * endian, the alphabet size, the number of rotors and the key of the
+ * rotors (their names and wirings), followed, from the end of the
+ * header, by the tables in native byte order.
+ *
+ * @author taiga
+ */
+class RotorTables {
+
+    /**
+     * Write the tables of the rotors of the configuration named by
+     * ARGS[0] to the file ARGS[1], if it does not already hold them.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){2,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.RotorTables CONFIG FILE");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.loadConfig(files.get(0));
+            open(new File(files.get(1)), machine.allRotors());
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Tables of ROTORS in direct memory.
+     */
+    RotorTables(Rotor[] rotors) {
+        this(rotors, Segment.allocate(length(rotors)));
+        fill(rotors, _tables);
+    }
+
+    /**
+     * Tables of ROTORS held in TABLES.
+     */
+    private RotorTables(Rotor[] rotors, Segment tables) {
+        _size = rotors[0].size();
+        _count = rotors.length;
+        _tables = tables;
+    }
+
+    /**
+     * Return the tables of ROTORS mapped from FILE, first writing them
+     * to FILE if it does not hold them.  The file is replaced
+     * atomically, so that processes mapping it concurrently see either
+     * the old or the new contents.
+     */
+    static RotorTables open(File file, Rotor[] rotors) throws IOException {
+        String key = key(rotors);
+        int headerLength = -1;
+        if (file.exists()) {
+            try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() == MAGIC) {
+                    int length = in.readInt();
+                    boolean bigEndian = in.readBoolean();
+                    if (bigEndian == nativeBigEndian()
+                        && in.readInt() == rotors[0].size()
+                        && in.readInt() == rotors.length
+                        && in.readUTF().equals(key)) {
+                        headerLength = length;
+                    }
+                }
+            } catch (IOException excp) {
+                headerLength = -1;
+            }
+        }
+        if (headerLength < 0) {
+            headerLength = write(file, rotors, key);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() < headerLength
+                + (long) length(rotors) * Integer.BYTES) {
+                throw error("%s is truncated", file);
+            }
+            return new RotorTables(rotors,
+                                   Segment.map(channel, headerLength,
+                                               length(rotors), false));
+        }
+    }
+
+    /**
+     * Write the tables of ROTORS, whose key is KEY, to FILE and return
+     * the length of its header.
+     */
+    private static int write(File file, Rotor[] rotors, String key)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeBoolean(nativeBigEndian());
+        header.writeInt(rotors[0].size());
+        header.writeInt(rotors.length);
+        header.writeUTF(key);
+        header.flush();
+        int headerLength = PREFIX + bytes.size();
+        headerLength += (Long.BYTES - headerLength % Long.BYTES) % Long.BYTES;
+
+        Segment tables = Segment.allocate(length(rotors));
+        fill(rotors, tables);
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw");
+             FileChannel channel = out.getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate(headerLength);
+            buf.putInt(MAGIC).putInt(headerLength).put(bytes.toByteArray());
+            buf.position(0);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            ByteBuffer body = tables.bytes();
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+        return headerLength;
+    }
+
+    /**
+     * Return a string identifying ROTORS: their names and wirings.
+     */
+    static String key(Rotor[] rotors) {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : rotors) {
+            result.append(rotor.name()).append('=')
+                .append(rotor.permutation().cycles()).append(';');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return true iff the platform's native byte order is big endian.
+     */
+    private static boolean nativeBigEndian() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Return the number of ints in the tables of ROTORS.
+     */
+    private static int length(Rotor[] rotors) {
+        long size = rotors[0].size();
+        long length = 2 * rotors.length * size * size;
+        if (length > Integer.MAX_VALUE / Integer.BYTES) {
+            throw error("rotor tables too large");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Fill TABLES with the tables of ROTORS.
+     */
+    private static void fill(Rotor[] rotors, Segment tables) {
+        Wiring wiring = new Wiring(rotors);
+        int size = wiring.size();
+        int[] row = new int[size];
+        for (int r = 0; r < rotors.length; r += 1) {
+            for (int dir = 0; dir < 2; dir += 1) {
+                int[] table = dir == 0 ? wiring.forward(r)
+                    : wiring.backward(r);
+                for (int offset = 0; offset < size; offset += 1) {
+                    for (int c = 0; c < size; c += 1) {
+                        row[c] = wiring.through(table, offset, c);
+                    }
+                    tables.set(((2 * r + dir) * size + offset) * size, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of rotors.
+     */
+    int count() {
+        return _count;
+    }
+
+    /**
+     * Return the alphabet size.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the result of passing C forward through rotor #R at
+     * OFFSET.
+     */
+    int forward(int r, int offset, int c) {
+        return _tables.get(((2 * r) * _size + offset) * _size + c);
+    }
+
+    /**
+     * Return the result of passing C backward through rotor #R at
+     * OFFSET.
+     */
+    int backward(int r, int offset, int c) {
+        return _tables.get(((2 * r + 1) * _size + offset) * _size + c);
+    }
+
+    /**
+     * Magic number at the start of a tables file.
+     */
+    static final int MAGIC = 0x454e5257;
+    /**
+     * Length of the magic number and header length fields.
+     */
+    private static final int PREFIX = 2 * Integer.BYTES;
+
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * # rotors.
+     */
+    private final int _count;
+    /**
+     * The tables.
+     */
+    private final Segment _tables;
+}
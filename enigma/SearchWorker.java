@@ -0,0 +1,204 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The worker side of a KeySearch: scores the keys of the work units a
+ * coordinator hands it and reports the best of each.  A key's score is
+ * the fraction of the crib (known plaintext at the start of the
+ * message) that decrypting the ciphertext with the key reproduces, or,
+ * without a crib, the index of coincidence of the decryption.  Keys
+ * are tried with an empty plugboard.
+ * <p>
+ * A worker talks to its coordinator in lines: it sends READY, and the
+ * coordinator answers either "UNIT ID COUNT TOP", asking for the TOP best
+ * keys of shard #ID of COUNT of the key space (see KeySpace.shard), to
+ * which the worker replies "DONE ID" followed by the candidates (see
+ * Candidates), or QUIT.  After DONE, the worker is ready for another
+ * unit without saying so again.
+ *
+ * @author taiga
+ */
+class SearchWorker {
+
+    /**
+     * A worker scoring the keys of KEYS, which enumerates MACHINE, by
+     * decrypting CIPHERTEXT and comparing it with CRIB (empty for
+     * none).  Both contain only characters of MACHINE's alphabet, and
+     * CRIB is no longer than CIPHERTEXT.  MACHINE's setup is changed by
+     * the search.
+     */
+    SearchWorker(Machine machine, KeySpace keys, String ciphertext,
+                 String crib) {
+        if (crib.length() > ciphertext.length()) {
+            throw error("crib longer than the ciphertext");
+        }
+        _machine = machine;
+        _keys = keys;
+        _alphabet = machine.alphabet();
+        _text = indices(ciphertext);
+        _crib = indices(crib);
+        _digits = new int[machine.numRotors()];
+        _setting = new char[machine.numRotors() - 1];
+        _rings = new char[machine.numRotors() - 1];
+        _counts = new int[_alphabet.size()];
+        _machine.setPlugboard(new Permutation("", _alphabet));
+    }
+
+    /**
+     * Return the alphabet indices of the characters of TEXT.
+     */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _alphabet.indexOf(text.charAt(i));
+            if (result[i] < 0) {
+                throw error("%c is not in the alphabet", text.charAt(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Take work units from the coordinator at the other end of SOCKET
+     * until it has no more.
+     */
+    void serve(Socket socket) throws IOException {
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        Writer out =
+            new OutputStreamWriter(socket.getOutputStream(),
+                                   StandardCharsets.ISO_8859_1);
+        out.write("READY\n");
+        out.flush();
+        while (true) {
+            String line = in.readLine();
+            if (line == null || line.equals("QUIT")) {
+                return;
+            }
+            String[] fields = line.split(" ");
+            if (fields.length != 4 || !fields[0].equals("UNIT")) {
+                throw error("bad request from coordinator: %s", line);
+            }
+            int unit, count, top;
+            try {
+                unit = Integer.parseInt(fields[1]);
+                count = Integer.parseInt(fields[2]);
+                top = Integer.parseInt(fields[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad request from coordinator: %s", line);
+            }
+            Candidates found = search(unit, count, top);
+            out.write("DONE " + unit + " " + found + "\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Return the TOP best keys of shard #UNIT of COUNT.
+     */
+    Candidates search(int unit, int count, int top) {
+        Candidates result = new Candidates(top);
+        _keys.shard(unit, count, false)
+            .forEach(key -> result.offer(key, score(key)));
+        return result;
+    }
+
+    /**
+     * Return the score of KEY.
+     */
+    double score(long key) {
+        setUp(key);
+        if (_crib.length > 0) {
+            int matches = 0;
+            for (int i = 0; i < _crib.length; i += 1) {
+                if (_machine.convert(_text[i]) == _crib[i]) {
+                    matches += 1;
+                }
+            }
+            return (double) matches / _crib.length;
+        }
+        Arrays.fill(_counts, 0);
+        for (int c : _text) {
+            _counts[_machine.convert(c)] += 1;
+        }
+        long pairs = 0;
+        for (int n : _counts) {
+            pairs += (long) n * (n - 1);
+        }
+        long n = _text.length;
+        return n < 2 ? 0 : (double) pairs / (n * (n - 1));
+    }
+
+    /**
+     * Set up my machine with KEY, inserting rotors only when its rotor
+     * order differs from the last key's.
+     */
+    private void setUp(long key) {
+        int order = _keys.order(key);
+        if (order != _order) {
+            _machine.insertRotors(_keys.orders().names(order));
+            _order = order;
+        }
+        _keys.positions(key, _digits);
+        for (int k = 1; k < _digits.length; k += 1) {
+            _setting[k - 1] = _alphabet.toChar(_digits[k]);
+        }
+        _keys.rings(key, _digits);
+        for (int k = 1; k < _digits.length; k += 1) {
+            _rings[k - 1] = _alphabet.toChar(_digits[k]);
+        }
+        _machine.setRotors(new String(_setting), new String(_rings));
+    }
+
+    /**
+     * The machine used to decrypt.
+     */
+    private final Machine _machine;
+    /**
+     * The key space searched.
+     */
+    private final KeySpace _keys;
+    /**
+     * Alphabet of the machine.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * The ciphertext, as alphabet indices.
+     */
+    private final int[] _text;
+    /**
+     * The crib, as alphabet indices.
+     */
+    private final int[] _crib;
+    /**
+     * Rotor order last inserted, or -1.
+     */
+    private int _order = -1;
+    /**
+     * Digits of a key's settings or ring settings.
+     */
+    private final int[] _digits;
+    /**
+     * A key's rotor settings.
+     */
+    private final char[] _setting;
+    /**
+     * A key's ring settings.
+     */
+    private final char[] _rings;
+    /**
+     * Occurrences of each character in a decryption.
+     */
+    private final int[] _counts;
+}
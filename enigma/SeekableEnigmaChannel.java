@@ -0,0 +1,243 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A seekable channel over a file enciphered with a Machine from a known
+ * start setting, reading and writing plaintext.  Each byte of the file,
+ * taken as an ISO-8859-1 character, is converted with the rotors in the
+ * positions reached after as many steps as its offset plus one, so the
+ * conversion of a byte depends only on where it is.  Unlike the stream
+ * adapters (see EnigmaChannel), every byte consumes a step, including
+ * bytes not in the alphabet, which pass through unchanged.
+ * <p>
+ * Seeking puts the machine directly into the positions for the new
+ * offset (see StepIndex), so a read or write converts only the bytes it
+ * covers, wherever they are in the file.  Sequential reads and writes
+ * simply continue from where the last one stopped.
+ *
+ * @author taiga
+ */
+class SeekableEnigmaChannel implements SeekableByteChannel {
+
+    /**
+     * Write to the standard output the plaintext of bytes OFFSET ..
+     * OFFSET+LENGTH-1 of the file ARGS[2], enciphered on the machine
+     * configured by the file ARGS[0] and set up by the setting line
+     * ARGS[1] (without its '*').  Options: --offset=N (default 0) and
+     * --length=N (default to the end of the file).
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--offset=(\\d+) --length=(\\d+) "
+                                + "--=(.*){3,3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.SeekableEnigmaChannel "
+                            + "[--offset=N] [--length=N] CONFIG SETTING "
+                            + "FILE");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.loadConfig(files.get(0));
+            Main.setUp(machine, files.get(1));
+            try (RandomAccessFile raf = new RandomAccessFile(files.get(2),
+                                                             "r");
+                 SeekableEnigmaChannel channel =
+                     new SeekableEnigmaChannel(raf.getChannel(), machine)) {
+                long offset = options.contains("--offset")
+                    ? Long.parseLong(options.getLast("--offset")) : 0;
+                long end = options.contains("--length")
+                    ? offset + Long.parseLong(options.getLast("--length"))
+                    : channel.size();
+                channel.position(offset);
+                ByteBuffer buf = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+                while (channel.position() < end) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(),
+                                             end - channel.position()));
+                    if (channel.read(buf) < 0) {
+                        break;
+                    }
+                    System.out.write(buf.array(), 0, buf.position());
+                }
+                System.out.flush();
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A channel over FILE, whose byte 0 was converted by MACHINE as it
+     * is now set up.  MACHINE is used, and its rotor positions changed,
+     * by the channel.
+     */
+    SeekableEnigmaChannel(FileChannel file, Machine machine) {
+        _file = file;
+        _machine = machine;
+        _index = new StepIndex(machine);
+        _pos = new int[machine.numRotors()];
+        _buf = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int n = _file.read(ByteBuffer.wrap(_buf, 0,
+                                               Math.min(dst.remaining(),
+                                                        _buf.length)),
+                               _position);
+            if (n <= 0) {
+                return total == 0 && n < 0 ? -1 : total;
+            }
+            convert(n);
+            dst.put(_buf, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        int total = 0;
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), _buf.length);
+            src.get(_buf, 0, n);
+            long at = _position;
+            convert(n);
+            ByteBuffer out = ByteBuffer.wrap(_buf, 0, n);
+            while (out.hasRemaining()) {
+                at += _file.write(out, at);
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Convert _buf[0 .. N-1], the bytes at my position, and advance my
+     * position past them.
+     */
+    private void convert(int n) {
+        if (_machineAt != _position) {
+            _index.positions(_position, _pos);
+            _machine.setPositions(_pos);
+            _machineAt = _position;
+        }
+        Alphabet alphabet = _machine.alphabet();
+        for (int i = 0; i < n; i += 1) {
+            int c = alphabet.indexOf((char) (_buf[i] & BYTE_MASK));
+            if (c >= 0) {
+                _buf[i] = (byte) alphabet.toChar(_machine.convert(c));
+            } else {
+                _machine.step();
+            }
+        }
+        _position += n;
+        _machineAt = _position;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return _position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition)
+        throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        _position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return _file.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        _file.truncate(size);
+        _position = Math.min(_position, size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _file.close();
+    }
+
+    /**
+     * Throw ClosedChannelException if I am closed.
+     */
+    private void checkOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Size of the conversion buffer.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * The enciphered file.
+     */
+    private final FileChannel _file;
+    /**
+     * The machine converting bytes.
+     */
+    private final Machine _machine;
+    /**
+     * Rotor positions by step count from the start setting.
+     */
+    private final StepIndex _index;
+    /**
+     * Scratch rotor positions.
+     */
+    private final int[] _pos;
+    /**
+     * Conversion buffer.
+     */
+    private final byte[] _buf;
+    /**
+     * My position in the file.
+     */
+    private long _position;
+    /**
+     * The position in the file whose byte the machine's rotor positions
+     * are ready to convert next.
+     */
+    private long _machineAt;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A fixed-length array of ints held outside the Java heap, either in
+ * directly allocated memory or in a memory-mapped region of a file,
+ * where it may be shared with other processes.  Element access goes
+ * through an IntBuffer in native byte order, whose absolute get() the
+ * JIT compiler turns into a plain load after a bounds check it can hoist
+ * out of loops.
+ *
+ * @author taiga
+ */
+final class Segment {
+
+    /**
+     * Return a segment of LENGTH zeroed ints in direct memory.
+     */
+    static Segment allocate(int length) {
+        if (length < 0 || length > Integer.MAX_VALUE / Integer.BYTES) {
+            throw error("bad segment length %d", length);
+        }
+        return new Segment(ByteBuffer.allocateDirect(length * Integer.BYTES));
+    }
+
+    /**
+     * Return the segment of LENGTH ints at byte offset OFFSET in
+     * CHANNEL, mapped read-only unless WRITABLE.
+     */
+    static Segment map(FileChannel channel, long offset, int length,
+                       boolean writable) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE / Integer.BYTES) {
+            throw error("bad segment length %d", length);
+        }
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+            : FileChannel.MapMode.READ_ONLY;
+        return new Segment(channel.map(mode, offset,
+                                       (long) length * Integer.BYTES));
+    }
+
+    /**
+     * A segment holding the contents of BYTES.
+     */
+    private Segment(ByteBuffer bytes) {
+        _bytes = bytes.order(ByteOrder.nativeOrder());
+        _ints = _bytes.asIntBuffer();
+    }
+
+    /**
+     * Return my length in ints.
+     */
+    int length() {
+        return _ints.capacity();
+    }
+
+    /**
+     * Return element I.
+     */
+    int get(int i) {
+        return _ints.get(i);
+    }
+
+    /**
+     * Set element I to VALUE.
+     */
+    void set(int i, int value) {
+        _ints.put(i, value);
+    }
+
+    /**
+     * Store VALUES into my elements starting at I.
+     */
+    void set(int i, int[] values) {
+        _ints.put(i, values);
+    }
+
+    /**
+     * Return my contents as bytes in native order, for writing to a
+     * file.  The buffer shares my storage.
+     */
+    ByteBuffer bytes() {
+        return _bytes.duplicate().clear();
+    }
+
+    /**
+     * My storage.
+     */
+    private final ByteBuffer _bytes;
+    /**
+     * My storage as ints.
+     */
+    private final IntBuffer _ints;
+}
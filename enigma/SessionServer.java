@@ -0,0 +1,395 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A TCP server holding long-lived Enigma sessions.  Each connection is a
+ * session with its own machine, copied from the configuration loaded at
+ * startup so that all sessions share its rotor permutations.  A line
+ * beginning with '*' sets up the session's machine, as in an input
+ * file for Main; every other line is converted and sent back in groups
+ * of five, the machine keeping its state from line to line.  Errors are
+ * reported as lines beginning with "Error:" and leave the session open.
+ * <p>
+ * Each session runs on its own thread (a virtual thread where the
+ * platform provides them) and converts characters as they arrive, so
+ * its memory use is bounded by its fixed buffers whatever the length of
+ * its messages.  Sessions idle for longer than the idle timeout are
+ * closed.
+ *
+ * @author taiga
+ */
+public final class SessionServer {
+
+    /**
+     * Serve sessions of the configuration named by ARGS[0].  Options are
+     * --port=N (default 7070), --idle=SECONDS (default 300), and
+     * --report, which prints the throughput of each session as it ends.
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--port=(\\d+) --idle=(\\d+) --report "
+                                + "--=(.*){1,1}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.SessionServer [--port=N] "
+                            + "[--idle=SECONDS] [--report] CONFIG");
+            }
+            int port = option(options, "--port", DEFAULT_PORT);
+            if (port > MAX_PORT) {
+                throw error("bad value for --port");
+            }
+            int idle = option(options, "--idle", DEFAULT_IDLE);
+            if (idle > Integer.MAX_VALUE / MILLIS_PER_SEC) {
+                throw error("bad value for --idle");
+            }
+            List<String> files = options.get("--");
+            SessionServer server =
+                new SessionServer(Main.loadConfig(files.get(0)),
+                                  idle * MILLIS_PER_SEC,
+                                  options.contains("--report"));
+            try (ServerSocket socket = new ServerSocket(port)) {
+                server.serve(socket);
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the value of integer option NAME in OPTIONS, or DEFLT.
+     */
+    private static int option(CommandArgs options, String name, int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        try {
+            return Integer.parseInt(options.getLast(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /**
+     * A server whose sessions use copies of PROTOTYPE, are closed after
+     * IDLEMILLIS milliseconds without input (0 for never), and are
+     * reported on the standard error as they end iff REPORT.
+     */
+    SessionServer(Machine prototype, int idleMillis, boolean report) {
+        _prototype = prototype;
+        _idleMillis = idleMillis;
+        _report = report;
+        _executor = sessionExecutor();
+    }
+
+    /**
+     * Accept sessions on SOCKET until it is closed.
+     */
+    void serve(ServerSocket socket) throws IOException {
+        try {
+            while (!socket.isClosed()) {
+                Socket client = socket.accept();
+                client.setSoTimeout(_idleMillis);
+                _executor.execute(new Session(client,
+                                              _sessions.incrementAndGet()));
+            }
+        } finally {
+            _executor.shutdown();
+        }
+    }
+
+    /**
+     * Return the number of sessions currently open.
+     */
+    int openSessions() {
+        return _open.get();
+    }
+
+    /**
+     * Return the number of sessions closed for being idle.
+     */
+    long evictedSessions() {
+        return _evicted.get();
+    }
+
+    /**
+     * Return an executor running each task on a new virtual thread if
+     * the platform supports them, and otherwise on a new daemon thread
+     * with a small stack.
+     */
+    static ExecutorService sessionExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                String name = "session-" + count.incrementAndGet();
+                Thread thread =
+                    new Thread(null, task, name, SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * One client connection and its machine.
+     */
+    private class Session implements Runnable {
+
+        /**
+         * Session number ID on CLIENT.
+         */
+        Session(Socket client, int id) {
+            _client = client;
+            _id = id;
+            _machine = _prototype.copy();
+        }
+
+        @Override
+        public void run() {
+            _open.incrementAndGet();
+            long start = System.nanoTime();
+            try (Socket client = _client;
+                 InputStream in = client.getInputStream();
+                 OutputStream out = new BufferedOutputStream(
+                     client.getOutputStream(), BUFFER_SIZE)) {
+                _out = out;
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    for (int i = 0; i < n; i += 1) {
+                        accept((char) (buf[i] & BYTE_MASK));
+                    }
+                    out.flush();
+                }
+            } catch (SocketTimeoutException excp) {
+                _evicted.incrementAndGet();
+            } catch (IOException excp) {
+                /* Connection lost: the session simply ends. */
+            } finally {
+                _open.decrementAndGet();
+                if (_report) {
+                    long nanos = Math.max(1, System.nanoTime() - start);
+                    System.err.printf("session %d: %d chars in %.3f s "
+                                      + "(%.0f chars/s)%n", _id, _chars,
+                                      nanos / NANOS_PER_SEC,
+                                      _chars * NANOS_PER_SEC / nanos);
+                }
+            }
+        }
+
+        /**
+         * Process input character C.
+         */
+        private void accept(char c) throws IOException {
+            if (c == '\r') {
+                return;
+            }
+            if (c == '\n') {
+                endLine();
+            } else if (_lineLength == 0 && c == '*') {
+                _inSetting = true;
+                _setting.setLength(0);
+                _lineLength = 1;
+            } else if (_inSetting) {
+                if (_setting.length() < MAX_SETTING) {
+                    _setting.append(c);
+                } else {
+                    _failed = "setting line too long";
+                }
+                _lineLength += 1;
+            } else {
+                _lineLength += 1;
+                if (c != ' ' && _failed == null) {
+                    convert(c);
+                }
+            }
+        }
+
+        /**
+         * Convert message character C and send it.
+         */
+        private void convert(char c) throws IOException {
+            if (!_ready) {
+                _failed = "no setting line";
+                return;
+            }
+            int index = _machine.alphabet().indexOf(c);
+            if (index < 0) {
+                _failed = "char not in the alphabet";
+                return;
+            }
+            if (_groupLength == GROUP) {
+                _out.write(' ');
+                _groupLength = 0;
+            }
+            _out.write(_machine.alphabet().toChar(_machine.convert(index)));
+            _groupLength += 1;
+            _chars += 1;
+        }
+
+        /**
+         * Finish the current line.
+         */
+        private void endLine() throws IOException {
+            if (_inSetting && _failed == null) {
+                String set = _setting.toString().trim();
+                try {
+                    Main.setUp(_machine, set);
+                    _ready = true;
+                } catch (EnigmaException excp) {
+                    _ready = false;
+                    _failed = excp.getMessage();
+                }
+            } else if (!_inSetting && (_failed == null || _groupLength > 0)) {
+                _out.write('\n');
+            }
+            if (_failed != null) {
+                _out.write(("Error: " + _failed + "\n")
+                           .getBytes(StandardCharsets.ISO_8859_1));
+            }
+            _inSetting = false;
+            _failed = null;
+            _lineLength = 0;
+            _groupLength = 0;
+        }
+
+        /**
+         * Connection to the client.
+         */
+        private final Socket _client;
+        /**
+         * Session number.
+         */
+        private final int _id;
+        /**
+         * This session's machine.
+         */
+        private final Machine _machine;
+        /**
+         * Output to the client.
+         */
+        private OutputStream _out;
+        /**
+         * Setting line being read.
+         */
+        private final StringBuilder _setting = new StringBuilder();
+        /**
+         * True while reading a setting line.
+         */
+        private boolean _inSetting;
+        /**
+         * True once the machine has been set up.
+         */
+        private boolean _ready;
+        /**
+         * Error in the current line, or null.
+         */
+        private String _failed;
+        /**
+         * # characters in the current input line.
+         */
+        private int _lineLength;
+        /**
+         * # characters in the current output group.
+         */
+        private int _groupLength;
+        /**
+         * # characters converted.
+         */
+        private long _chars;
+    }
+
+    /**
+     * Default port.
+     */
+    static final int DEFAULT_PORT = 7070;
+    /**
+     * Largest TCP port number.
+     */
+    private static final int MAX_PORT = 0xffff;
+    /**
+     * Default idle timeout in seconds.
+     */
+    static final int DEFAULT_IDLE = 300;
+    /**
+     * Longest setting line accepted.
+     */
+    static final int MAX_SETTING = 1024;
+    /**
+     * Size of each session's input and output buffers.
+     */
+    private static final int BUFFER_SIZE = 2048;
+    /**
+     * Stack size of platform session threads.
+     */
+    private static final long SESSION_STACK_SIZE = 256 * 1024;
+    /**
+     * Number of letters in each output group.
+     */
+    private static final int GROUP = 5;
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * Milliseconds per second.
+     */
+    private static final int MILLIS_PER_SEC = 1000;
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SEC = 1e9;
+
+    /**
+     * Machine copied by each session.
+     */
+    private final Machine _prototype;
+    /**
+     * Idle timeout in milliseconds.
+     */
+    private final int _idleMillis;
+    /**
+     * True iff sessions are reported as they end.
+     */
+    private final boolean _report;
+    /**
+     * Runs the sessions.
+     */
+    private final ExecutorService _executor;
+    /**
+     * # sessions started.
+     */
+    private final AtomicInteger _sessions = new AtomicInteger();
+    /**
+     * # sessions open.
+     */
+    private final AtomicInteger _open = new AtomicInteger();
+    /**
+     * # sessions closed for being idle.
+     */
+    private final AtomicLong _evicted = new AtomicLong();
+}
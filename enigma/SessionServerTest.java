@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/**
+ * The suite of all JUnit tests for SessionServer.
+ *
+ * @author taiga
+ */
+public class SessionServerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a five-slot machine with rotors B, Beta, Gamma, I, II, III
+     * and IV.
+     */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "Gamma", "I", "II", "III",
+                            "IV");
+    }
+
+    /**
+     * Return SERVER serving on a new loopback socket, which is returned,
+     * from a thread of its own.
+     */
+    private ServerSocket start(SessionServer server) throws IOException {
+        ServerSocket socket =
+            new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(socket);
+            } catch (IOException excp) {
+                /* Socket closed: the test has ended. */
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return socket;
+    }
+
+    /**
+     * Return the conversions of LINES, less their blanks, by a machine
+     * set up with the setting line SETTING (as for Main.setUp), each in
+     * groups of five as a session sends it.
+     */
+    private String[] expected(String setting, String... lines) {
+        Machine mach = machine();
+        Main.setUp(mach, setting);
+        String[] result = new String[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            String converted = mach.convert(lines[i].replace(" ", ""));
+            StringBuilder groups = new StringBuilder();
+            for (int k = 0; k < converted.length(); k += 5) {
+                if (k > 0) {
+                    groups.append(' ');
+                }
+                groups.append(converted, k,
+                              Math.min(k + 5, converted.length()));
+            }
+            result[i] = groups.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Send LINE and a newline to OUT.
+     */
+    private void send(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Return a reader of the text sent on CLIENT.
+     */
+    private BufferedReader reader(Socket client) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(client.getInputStream(),
+                                  StandardCharsets.ISO_8859_1));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConcurrentSessions() throws IOException {
+        String setting1 = "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        String setting2 = "B Gamma II IV I QEZA BCDE";
+        String[] lines = {
+            "FROM HIS SHOULDER HIAWATHA",
+            "TOOK THE CAMERA OF ROSEWOOD",
+            "MADE OF SLIDING FOLDING ROSEWOOD"
+        };
+        String[] expected1 = expected(setting1, lines);
+        String[] expected2 = expected(setting2, lines);
+        assertNotEquals(expected1[0], expected2[0]);
+
+        SessionServer server = new SessionServer(machine(), 0, false);
+        try (ServerSocket socket = start(server);
+             Socket client1 =
+                 new Socket(InetAddress.getLoopbackAddress(),
+                            socket.getLocalPort());
+             Socket client2 =
+                 new Socket(InetAddress.getLoopbackAddress(),
+                            socket.getLocalPort())) {
+            OutputStream out1 = client1.getOutputStream(),
+                out2 = client2.getOutputStream();
+            BufferedReader in1 = reader(client1), in2 = reader(client2);
+            send(out1, "* " + setting1);
+            send(out2, "* " + setting2);
+            for (int i = 0; i < lines.length; i += 1) {
+                send(out1, lines[i]);
+                send(out2, lines[i]);
+                assertEquals(expected1[i], in1.readLine());
+                assertEquals(expected2[i], in2.readLine());
+            }
+            assertEquals(2, server.openSessions());
+
+            send(out1, "HELLO1");
+            assertEquals(5, in1.readLine().length());
+            assertEquals("Error: char not in the alphabet", in1.readLine());
+            send(out1, "* " + setting2);
+            send(out1, lines[0]);
+            assertEquals(expected2[0], in1.readLine());
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        SessionServer server = new SessionServer(machine(), 100, false);
+        try (ServerSocket socket = start(server);
+             Socket client =
+                 new Socket(InetAddress.getLoopbackAddress(),
+                            socket.getLocalPort())) {
+            BufferedReader in = reader(client);
+            send(client.getOutputStream(),
+                 "* B Beta III IV I AXLE");
+            assertNull(in.readLine());
+            while (server.evictedSessions() == 0
+                   || server.openSessions() > 0) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, server.evictedSessions());
+            assertEquals(0, server.openSessions());
+        }
+    }
+}
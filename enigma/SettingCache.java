@@ -0,0 +1,146 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of compiled setting lines for one
+ * Machine.  Each entry maps a normalized setting line to the state of
+ * the machine just after Main.setUp processed it, its rotors packed by
+ * Machine.packRotors together with its plugboard, so that a repeated
+ * setting line costs one Machine.restore instead of parsing the line
+ * and building a new plugboard.  The entry holds the plugboard itself
+ * rather than registering it with the machine, so an evicted entry's
+ * plugboard is freed, and any number of distinct plugboards can pass
+ * through the cache.
+ *
+ * @author taiga
+ */
+class SettingCache {
+
+    /**
+     * A cache of at most CAPACITY setting lines for MACHINE.
+     */
+    SettingCache(Machine machine, int capacity) {
+        _machine = machine;
+        _entries = new LinkedHashMap<String, Entry>(capacity, LOAD_FACTOR,
+                                                    true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Set my machine according to SETTINGS, as Main.setUp would.  Return
+     * true iff SETTINGS was found in the cache.
+     */
+    boolean setUp(String settings) {
+        String key = normalize(settings);
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            _hits += 1;
+            _machine.restore(entry.rotors, entry.plugboard);
+            return true;
+        }
+        _misses += 1;
+        Main.setUp(_machine, settings);
+        if (_machine.canPackRotors()) {
+            _entries.put(key, new Entry(_machine.packRotors(),
+                                        _machine.plugboard()));
+        }
+        return false;
+    }
+
+    /**
+     * Return SETTINGS with leading and trailing whitespace removed and
+     * other runs of whitespace replaced by single blanks.
+     */
+    static String normalize(String settings) {
+        StringBuilder result = new StringBuilder(settings.length());
+        boolean blank = false;
+        for (int i = 0; i < settings.length(); i += 1) {
+            char c = settings.charAt(i);
+            if (Character.isWhitespace(c)) {
+                blank = result.length() > 0;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the number of setting lines found in the cache.
+     */
+    long hits() {
+        return _hits;
+    }
+
+    /**
+     * Return the number of setting lines not found in the cache.
+     */
+    long misses() {
+        return _misses;
+    }
+
+    /**
+     * Return the number of setting lines cached.
+     */
+    int size() {
+        return _entries.size();
+    }
+
+    /**
+     * The state of the machine after one setting line.
+     */
+    private static class Entry {
+
+        /**
+         * The state with rotors packed into ROTORS and plugboard
+         * PLUGBOARD.
+         */
+        Entry(long rotors, Permutation plugboard) {
+            this.rotors = rotors;
+            this.plugboard = plugboard;
+        }
+
+        /**
+         * The rotors, settings and ring settings, as packed by
+         * Machine.packRotors.
+         */
+        final long rotors;
+        /**
+         * The plugboard.
+         */
+        final Permutation plugboard;
+    }
+
+    /**
+     * Load factor of the entry table.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The machine whose settings are cached.
+     */
+    private final Machine _machine;
+    /**
+     * Machine states by normalized setting line, least recently used
+     * first.
+     */
+    private final LinkedHashMap<String, Entry> _entries;
+    /**
+     * # cache hits.
+     */
+    private long _hits;
+    /**
+     * # cache misses.
+     */
+    private long _misses;
+}
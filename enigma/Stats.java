@@ -0,0 +1,250 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Counters and timers describing a run of the Enigma simulator.  The
+ * counters are LongAdders, so that updating them from the conversion
+ * loop stays cheap.
+ *
+ * @author taiga
+ */
+class Stats implements StatsMBean {
+
+    /**
+     * JMX name under which statistics are published.
+     */
+    static final String OBJECT_NAME = "enigma:type=Stats";
+
+    /**
+     * Publish me through the platform MBean server.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException excp) {
+            throw error("could not register %s", OBJECT_NAME);
+        }
+    }
+
+    /**
+     * Record that reading the configuration took NANOS.
+     */
+    void configRead(long nanos) {
+        _configNanos.add(nanos);
+    }
+
+    /**
+     * Record a section whose setup took NANOS.  CACHED is true iff its
+     * setting line was found in the setting cache.
+     */
+    void sectionSetUp(long nanos, boolean cached) {
+        _sections.increment();
+        _setUpNanos.add(nanos);
+        if (cached) {
+            _cachedSetUps.increment();
+        }
+    }
+
+    /**
+     * Record that converting a message line took NANOS.
+     */
+    void lineConverted(long nanos) {
+        _convertNanos.add(nanos);
+    }
+
+    /**
+     * Record the conversion of one character.
+     */
+    void charConverted() {
+        _chars.increment();
+    }
+
+    /**
+     * Record the advance of one rotor.  DOUBLESTEP is true iff the rotor
+     * advanced because of its own notch.
+     */
+    void rotorAdvanced(boolean doubleStep) {
+        _advances.increment();
+        if (doubleStep) {
+            _doubleSteps.increment();
+        }
+    }
+
+    /**
+     * Record that N bytes of output were written.
+     */
+    void outputWritten(long n) {
+        _outputBytes.add(n);
+    }
+
+    @Override
+    public long getConfigNanos() {
+        return _configNanos.sum();
+    }
+
+    @Override
+    public long getSections() {
+        return _sections.sum();
+    }
+
+    @Override
+    public long getSetUpNanos() {
+        return _setUpNanos.sum();
+    }
+
+    @Override
+    public long getCachedSetUps() {
+        return _cachedSetUps.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public long getCharsConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getRotorAdvances() {
+        return _advances.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getOutputBytes() {
+        return _outputBytes.sum();
+    }
+
+    /**
+     * Print a summary of my counters on OUT.
+     */
+    void report(PrintStream out) {
+        out.printf("config parse:     %12.3f ms%n", millis(getConfigNanos()));
+        out.printf("sections:         %12d%n", getSections());
+        out.printf("setUp:            %12.3f ms%n", millis(getSetUpNanos()));
+        out.printf("cached setUps:    %12d%n", getCachedSetUps());
+        out.printf("convert:          %12.3f ms%n",
+                   millis(getConvertNanos()));
+        out.printf("chars converted:  %12d%n", getCharsConverted());
+        out.printf("rotor advances:   %12d%n", getRotorAdvances());
+        out.printf("double steps:     %12d%n", getDoubleSteps());
+        out.printf("output bytes:     %12d%n", getOutputBytes());
+        long nanos = getConvertNanos();
+        if (nanos > 0) {
+            out.printf("throughput:       %12.0f chars/s%n",
+                       getCharsConverted() * NANOS_PER_SEC / nanos);
+        }
+        out.printf("gc time:          %12d ms%n", gcMillis());
+        long rss = peakRssKb();
+        if (rss >= 0) {
+            out.printf("peak rss:         %12d kB%n", rss);
+        }
+    }
+
+    /**
+     * Return the total time the JVM's collectors have spent collecting,
+     * in milliseconds.
+     */
+    static long gcMillis() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+
+    /**
+     * Return the peak resident set size of this process in kilobytes,
+     * or -1 where the platform does not report it.
+     */
+    static long peakRssKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get(PROC_STATUS))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Return NANOS converted to milliseconds.
+     */
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * File from which the peak resident set size is read.
+     */
+    private static final String PROC_STATUS = "/proc/self/status";
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SEC = 1e9;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Time spent reading the configuration.
+     */
+    private final LongAdder _configNanos = new LongAdder();
+    /**
+     * # sections set up.
+     */
+    private final LongAdder _sections = new LongAdder();
+    /**
+     * Time spent in setUp.
+     */
+    private final LongAdder _setUpNanos = new LongAdder();
+    /**
+     * # sections set up from the setting cache.
+     */
+    private final LongAdder _cachedSetUps = new LongAdder();
+    /**
+     * Time spent converting message lines.
+     */
+    private final LongAdder _convertNanos = new LongAdder();
+    /**
+     * # characters converted.
+     */
+    private final LongAdder _chars = new LongAdder();
+    /**
+     * # rotor advances.
+     */
+    private final LongAdder _advances = new LongAdder();
+    /**
+     * # double steps.
+     */
+    private final LongAdder _doubleSteps = new LongAdder();
+    /**
+     * # output bytes.
+     */
+    private final LongAdder _outputBytes = new LongAdder();
+}
@@ -0,0 +1,57 @@
+package enigma;
+
+/**
+ * Management interface through which a Stats object is published over
+ * JMX while the simulator runs.  All times are in nanoseconds.
+ *
+ * @author taiga
+ */
+public interface StatsMBean {
+
+    /**
+     * Return the time spent reading the configuration file.
+     */
+    long getConfigNanos();
+
+    /**
+     * Return the number of sections (setting lines) processed.
+     */
+    long getSections();
+
+    /**
+     * Return the total time spent setting up sections.
+     */
+    long getSetUpNanos();
+
+    /**
+     * Return the number of sections set up from the setting cache.
+     */
+    long getCachedSetUps();
+
+    /**
+     * Return the total time spent converting message lines.
+     */
+    long getConvertNanos();
+
+    /**
+     * Return the number of characters converted.
+     */
+    long getCharsConverted();
+
+    /**
+     * Return the number of individual rotor advances.
+     */
+    long getRotorAdvances();
+
+    /**
+     * Return the number of double steps, i.e. advances of a rotor caused
+     * by its own notch rather than by the rotor to its right.
+     */
+    long getDoubleSteps();
+
+    /**
+     * Return the number of bytes of output written.
+     */
+    long getOutputBytes();
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The rotor positions of a Machine after any number of steps from its
+ * positions when the index was made.  Positions are recorded every
+ * INTERVAL steps over the tail and first period of the machine's
+ * stepping (see PeriodAnalysis), so that the positions after N steps
+ * are found by reducing N modulo the period, looking up the nearest
+ * recorded positions and stepping fewer than INTERVAL times from
+ * there, however large N is.
+ *
+ * @author taiga
+ */
+class StepIndex {
+
+    /**
+     * An index of the positions of MACHINE, with its current rotors,
+     * counting steps from its current positions.
+     */
+    StepIndex(Machine machine) {
+        PeriodAnalysis analysis = new PeriodAnalysis(machine);
+        _stepping = analysis.stepping();
+        _tail = analysis.tail();
+        _period = analysis.period();
+        long span = _tail + _period;
+        if (span / INTERVAL >= Integer.MAX_VALUE) {
+            throw error("stepping period too long to index");
+        }
+        _marks = new long[(int) ((span + INTERVAL - 1) / INTERVAL)];
+        int[] pos = new int[machine.numRotors()];
+        for (int k = 1; k < pos.length; k += 1) {
+            pos[k] = machine.getRotor(k).setting();
+        }
+        for (long t = 0; t < span; t += 1) {
+            if (t % INTERVAL == 0) {
+                _marks[(int) (t / INTERVAL)] = _stepping.pack(pos);
+            }
+            _stepping.step(pos);
+        }
+    }
+
+    /**
+     * Return the number of steps before the positions become periodic.
+     */
+    long tail() {
+        return _tail;
+    }
+
+    /**
+     * Return the period of the positions.
+     */
+    long period() {
+        return _period;
+    }
+
+    /**
+     * Store into POS[1 .. numRotors()-1] the rotor positions after N
+     * steps.
+     */
+    void positions(long n, int[] pos) {
+        if (n < 0) {
+            throw error("negative step count %d", n);
+        }
+        if (n >= _tail + _period) {
+            n = _tail + (n - _tail) % _period;
+        }
+        _stepping.unpack(_marks[(int) (n / INTERVAL)], pos);
+        for (long i = n % INTERVAL; i > 0; i -= 1) {
+            _stepping.step(pos);
+        }
+    }
+
+    /**
+     * Steps between recorded positions.
+     */
+    static final int INTERVAL = 64;
+
+    /**
+     * Stepping rules of the machine.
+     */
+    private final Stepping _stepping;
+    /**
+     * Steps before the positions become periodic.
+     */
+    private final long _tail;
+    /**
+     * Period of the positions.
+     */
+    private final long _period;
+    /**
+     * Packed positions after each multiple of INTERVAL steps.
+     */
+    private final long[] _marks;
+}
@@ -0,0 +1,200 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A flat description of how the rotors inserted in a Machine step:
+ * which slots rotate or reflect and where their notches are, with rotor
+ * positions held as plain integers.  Stepping a position array with
+ * step() gives exactly the same sequence of positions as
+ * Machine.advanceRotors.
+ *
+ * @author taiga
+ */
+class Stepping {
+
+    /**
+     * The stepping rules of the rotors currently inserted in MACHINE.
+     */
+    Stepping(Machine machine) {
+        this(machine.alphabet(), slots(machine));
+    }
+
+    /**
+     * The stepping rules of a machine over ALPHABET whose slots hold
+     * ROTORS, ROTORS[0] being the reflector.
+     */
+    Stepping(Alphabet alphabet, Rotor[] rotors) {
+        _numRotors = rotors.length;
+        _size = alphabet.size();
+        _rotates = new boolean[_numRotors];
+        _reflecting = new boolean[_numRotors];
+        _notches = new long[_numRotors][(_size + WORD - 1) / WORD];
+        for (int k = 0; k < _numRotors; k += 1) {
+            _rotates[k] = rotors[k].rotates();
+            _reflecting[k] = rotors[k].reflecting();
+            if (_rotates[k]) {
+                String notches = rotors[k].notches();
+                for (int i = 0; i < notches.length(); i += 1) {
+                    int p = alphabet.toInt(notches.charAt(i));
+                    _notches[k][p / WORD] |= 1L << (p % WORD);
+                }
+            }
+        }
+        int bits = 1;
+        while ((1 << bits) < _size) {
+            bits += 1;
+        }
+        _bits = bits;
+    }
+
+    /**
+     * Return the rotors in the slots of MACHINE.
+     */
+    static Rotor[] slots(Machine machine) {
+        Rotor[] rotors = new Rotor[machine.numRotors()];
+        for (int k = 0; k < rotors.length; k += 1) {
+            rotors[k] = machine.getRotor(k);
+            if (rotors[k] == null) {
+                throw error("rotor slot %d is empty", k);
+            }
+        }
+        return rotors;
+    }
+
+    /**
+     * Return the number of rotor slots.
+     */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /**
+     * Return the size of the alphabet.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return true iff the rotor in slot K rotates.
+     */
+    boolean rotates(int k) {
+        return _rotates[k];
+    }
+
+    /**
+     * Return true iff the rotor in slot K reflects.
+     */
+    boolean reflecting(int k) {
+        return _reflecting[k];
+    }
+
+    /**
+     * Return true iff the rotor in slot K has a notch at position P.
+     */
+    boolean atNotch(int k, int p) {
+        return (_notches[k][p / WORD] & (1L << (p % WORD))) != 0;
+    }
+
+    /**
+     * Advance the rotor positions POS (indexed by slot) as
+     * Machine.advanceRotors would, returning the number of double steps
+     * that occurred.
+     */
+    int step(int[] pos) {
+        int doubleSteps = 0;
+        int firstIndex = _numRotors - 1;
+        boolean check = atNotch(firstIndex, pos[firstIndex]);
+        advance(pos, firstIndex);
+        for (int i = firstIndex - 1; i > 0; i -= 1) {
+            boolean notch = atNotch(i, pos[i]);
+            if (check) {
+                if (!notch) {
+                    advance(pos, i);
+                    check = false;
+                } else if (_rotates[i - 1]) {
+                    advance(pos, i);
+                } else if (_reflecting[i - 1]) {
+                    advance(pos, i);
+                    check = false;
+                }
+            } else if (notch && _rotates[i - 1]) {
+                advance(pos, i);
+                doubleSteps += 1;
+                check = true;
+            }
+        }
+        return doubleSteps;
+    }
+
+    /**
+     * Advance the rotor in slot K of POS, if it rotates.
+     */
+    private void advance(int[] pos, int k) {
+        if (_rotates[k]) {
+            pos[k] = pos[k] + 1 == _size ? 0 : pos[k] + 1;
+        }
+    }
+
+    /**
+     * Return true iff the positions of all rotor slots fit in a long
+     * as packed by pack().
+     */
+    boolean packable() {
+        return _bits * (_numRotors - 1) < Long.SIZE;
+    }
+
+    /**
+     * Return the positions POS of slots 1 .. numRotors()-1 packed into a
+     * long, the fast rotor in the low-order bits.
+     */
+    long pack(int[] pos) {
+        long state = 0;
+        for (int k = 1; k < _numRotors; k += 1) {
+            state = (state << _bits) | pos[k];
+        }
+        return state;
+    }
+
+    /**
+     * Store the positions packed in STATE into POS.
+     */
+    void unpack(long state, int[] pos) {
+        long mask = (1L << _bits) - 1;
+        for (int k = _numRotors - 1; k > 0; k -= 1) {
+            pos[k] = (int) (state & mask);
+            state >>>= _bits;
+        }
+    }
+
+    /**
+     * Bits in a notch-set word.
+     */
+    private static final int WORD = Long.SIZE;
+
+    /**
+     * # of rotor slots.
+     */
+    private final int _numRotors;
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * Bits used for one position in a packed state.
+     */
+    private final int _bits;
+    /**
+     * Which slots rotate.
+     */
+    private final boolean[] _rotates;
+    /**
+     * Which slots reflect.
+     */
+    private final boolean[] _reflecting;
+    /**
+     * Notch positions of each slot, as bit sets.
+     */
+    private final long[][] _notches;
+}
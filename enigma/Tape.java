@@ -0,0 +1,336 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A memory-mapped keystream tape: for one rotor order, setting of the
+ * rotors that do not rotate, ring setting and plugboard, the permutation
+ * the machine performs from every position of its rotating rotors.  A
+ * machine with a matching setup can then convert a message from any
+ * starting position by table lookups alone, and processes mapping the
+ * same tape share it through the page cache.
+ * <p>
+ * A state numbers the positions of the rotating rotors, the leftmost
+ * being the most significant digit.  The file holds the magic number,
+ * the length of the header, the alphabet size, the number of slots,
+ * the number of states, a flag for each slot telling whether it
+ * rotates, and the key of the setup (see key()), followed, from the end
+ * of the header, by the state that follows each state as an int, and
+ * then by the permutation performed from each state as one byte per
+ * character.  The permutation performed from a state is that performed
+ * after the rotors advance from it, as in Machine.convert.
+ *
+ * @author taiga
+ */
+class Tape {
+
+    /**
+     * Build the tape for the configuration named by ARGS[0] and the
+     * setting line ARGS[1] (whose rotating rotors' settings are
+     * ignored), and write it to the file ARGS[2].
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){3,3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Tape CONFIG SETTING TAPE");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.loadConfig(files.get(0));
+            Main.setUp(machine, files.get(1));
+            write(machine, new File(files.get(2)));
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the key identifying the setup of MACHINE described by a
+     * tape: its rotor names, the settings of its rotors that do not
+     * rotate ('?' for those that do), its ring settings, and its
+     * plugboard.
+     */
+    static String key(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        Rotor[] slots = Stepping.slots(machine);
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : slots) {
+            result.append(rotor.name()).append(' ');
+        }
+        for (int k = 1; k < slots.length; k += 1) {
+            result.append(slots[k].rotates() ? '?'
+                          : alphabet.toChar(slots[k].setting()));
+        }
+        result.append(' ');
+        for (int k = 1; k < slots.length; k += 1) {
+            result.append(alphabet.toChar(slots[k].optional()));
+        }
+        Permutation plugboard = machine.plugboard();
+        if (plugboard != null && !plugboard.identity()) {
+            result.append(' ').append(plugboard.cycles());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Write the tape for the current setup of MACHINE to FILE, computing
+     * it in parallel.
+     */
+    static void write(Machine machine, File file) throws IOException {
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        if (size > 1 << Byte.SIZE) {
+            throw error("alphabet too large for a tape");
+        }
+        Rotor[] slots = Stepping.slots(machine);
+        int n = slots.length;
+        Stepping stepping = new Stepping(alphabet, slots);
+        boolean[] rotating = new boolean[n];
+        long count = 1;
+        for (int k = 1; k < n; k += 1) {
+            rotating[k] = stepping.rotates(k);
+            if (rotating[k]) {
+                count *= size;
+            }
+        }
+        if (count * (size + Integer.BYTES) > Integer.MAX_VALUE) {
+            throw error("tape too large");
+        }
+        int states = (int) count;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(size);
+        header.writeInt(n);
+        header.writeInt(states);
+        for (boolean r : rotating) {
+            header.writeBoolean(r);
+        }
+        header.writeUTF(key(machine));
+        header.flush();
+        int headerLength = PREFIX + bytes.size();
+        headerLength += (Long.BYTES - headerLength % Long.BYTES) % Long.BYTES;
+
+        int[] next = new int[states];
+        byte[] rows = new byte[states * size];
+        Wiring wiring = new Wiring(slots);
+        int[] order = new int[n];
+        int[] fixed = new int[n];
+        int[] plug = new int[size];
+        for (int k = 0; k < n; k += 1) {
+            order[k] = k;
+            fixed[k] = slots[k].setting();
+        }
+        Permutation plugboard = machine.plugboard();
+        for (int c = 0; c < size; c += 1) {
+            plug[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        int blocks = (states + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int[] pos = fixed.clone();
+            int[] offsets = new int[n];
+            int[] perm = new int[size];
+            int last = Math.min(states, (b + 1) * BLOCK);
+            for (int s = b * BLOCK; s < last; s += 1) {
+                positions(s, rotating, size, pos);
+                stepping.step(pos);
+                next[s] = state(pos, rotating, size);
+                for (int k = 0; k < n; k += 1) {
+                    offsets[k] =
+                        Math.floorMod(pos[k] - slots[k].optional(), size);
+                }
+                wiring.permutation(order, offsets, perm);
+                for (int c = 0; c < size; c += 1) {
+                    rows[s * size + c] = (byte) plug[perm[plug[c]]];
+                }
+            }
+        });
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+            ByteBuffer buf = ByteBuffer.allocate(headerLength
+                                                 + states * Integer.BYTES);
+            buf.putInt(MAGIC).putInt(headerLength).put(bytes.toByteArray());
+            while (buf.position() < headerLength) {
+                buf.put((byte) 0);
+            }
+            buf.asIntBuffer().put(next);
+            buf.position(0);
+            writeFully(buf, channel);
+            writeFully(ByteBuffer.wrap(rows), channel);
+        }
+    }
+
+    /**
+     * Write all of BUF to CHANNEL.
+     */
+    private static void writeFully(ByteBuffer buf, FileChannel channel)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * The tape in FILE.
+     */
+    Tape(File file) throws IOException {
+        int headerLength;
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a keystream tape", file);
+            }
+            headerLength = in.readInt();
+            _size = in.readInt();
+            _rotating = new boolean[in.readInt()];
+            _states = in.readInt();
+            for (int k = 0; k < _rotating.length; k += 1) {
+                _rotating[k] = in.readBoolean();
+            }
+            _key = in.readUTF();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long length = (long) _states * (Integer.BYTES + _size);
+            if (channel.size() < headerLength + length) {
+                throw error("%s is truncated", file);
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY,
+                                headerLength, length);
+        }
+        _rows = _states * Integer.BYTES;
+    }
+
+    /**
+     * Return the key of the setup I describe.
+     */
+    String key() {
+        return _key;
+    }
+
+    /**
+     * Return the number of states.
+     */
+    int states() {
+        return _states;
+    }
+
+    /**
+     * Return the state of the rotor settings POS.
+     */
+    int state(int[] pos) {
+        return state(pos, _rotating, _size);
+    }
+
+    /**
+     * Store into POS the settings of the rotating rotors in STATE.
+     */
+    void positions(int state, int[] pos) {
+        positions(state, _rotating, _size, pos);
+    }
+
+    /**
+     * Return the state that follows STATE.
+     */
+    int next(int state) {
+        return _data.getInt(state * Integer.BYTES);
+    }
+
+    /**
+     * Return the conversion of C by the machine when in STATE (after it
+     * advances from STATE).
+     */
+    int convert(int state, int c) {
+        return _data.get(_rows + state * _size + c) & BYTE_MASK;
+    }
+
+    /**
+     * Return the state of the settings POS, whose slots rotate as given
+     * by ROTATING, for an alphabet of SIZE characters.
+     */
+    private static int state(int[] pos, boolean[] rotating, int size) {
+        int state = 0;
+        for (int k = 1; k < rotating.length; k += 1) {
+            if (rotating[k]) {
+                state = state * size + pos[k];
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Store into POS the settings in STATE of the slots flagged in
+     * ROTATING, for an alphabet of SIZE characters.
+     */
+    private static void positions(int state, boolean[] rotating, int size,
+                                  int[] pos) {
+        for (int k = rotating.length - 1; k > 0; k -= 1) {
+            if (rotating[k]) {
+                pos[k] = state % size;
+                state /= size;
+            }
+        }
+    }
+
+    /**
+     * Magic number at the start of a tape file.
+     */
+    static final int MAGIC = 0x454e5254;
+    /**
+     * Length of the magic number and header length fields.
+     */
+    private static final int PREFIX = 2 * Integer.BYTES;
+    /**
+     * Number of states computed by each parallel task.
+     */
+    private static final int BLOCK = 1024;
+    /**
+     * Mask selecting the bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * True for the slots whose rotors rotate.
+     */
+    private final boolean[] _rotating;
+    /**
+     * # states.
+     */
+    private final int _states;
+    /**
+     * Key of the setup described.
+     */
+    private final String _key;
+    /**
+     * The mapped next states and permutations.
+     */
+    private final ByteBuffer _data;
+    /**
+     * Offset of the permutations in _data.
+     */
+    private final int _rows;
+}
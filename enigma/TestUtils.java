@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,42 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval rotors that move. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a new machine over UPPER with NUMROTORS slots and NUMPAWLS
+     *  pawls whose available rotors are the naval rotors NAMES, in that
+     *  order, wired as in NAVALA: B and C are reflectors, Beta and Gamma
+     *  are fixed, and the others move, with the notches in
+     *  NAVAL_NOTCHES.  Each call makes new rotors, so that machines made
+     *  by separate calls are independent. */
+    static Machine navalMachine(int numRotors, int numPawls,
+                                String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (name.equals("Beta") || name.equals("Gamma")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            }
+        }
+        return new Machine(UPPER, numRotors, numPawls, rotors);
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -16,7 +16,19 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                PeriodAnalysisTest.class,
+                CatalogTest.class,
+                EnigmaStreamTest.class,
+                EnigmaProcessorTest.class,
+                SessionServerTest.class,
+                KeySpaceTest.class,
+                KeySearchTest.class,
+                DepthsTest.class,
+                PipelineTest.class,
+                MachinePoolTest.class,
+                FanOutTest.class,
+                NormalizerTest.class));
     }
 
 }
@@ -0,0 +1,95 @@
+package enigma;
+
+/**
+ * The wirings of a set of rotors as primitive lookup tables, from which
+ * the permutation performed by a whole machine at given rotor offsets
+ * can be computed without touching any Rotor.
+ *
+ * @author taiga
+ */
+class Wiring {
+
+    /**
+     * The wirings of ROTORS, which must share an alphabet.
+     */
+    Wiring(Rotor[] rotors) {
+        _size = rotors[0].size();
+        _forward = new int[rotors.length][_size];
+        _backward = new int[rotors.length][_size];
+        for (int r = 0; r < rotors.length; r += 1) {
+            Permutation perm = rotors[r].permutation();
+            for (int c = 0; c < _size; c += 1) {
+                _forward[r][c] = perm.permute(c);
+                _backward[r][c] = perm.invert(c);
+            }
+        }
+    }
+
+    /**
+     * Return the size of the alphabet.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the forward table of rotor #R.  It must not be modified.
+     */
+    int[] forward(int r) {
+        return _forward[r];
+    }
+
+    /**
+     * Return the backward table of rotor #R.  It must not be modified.
+     */
+    int[] backward(int r) {
+        return _backward[r];
+    }
+
+    /**
+     * Return the result of passing C through TABLE when its rotor is at
+     * OFFSET (its setting less its ring setting, in 0 .. size()-1).
+     */
+    int through(int[] table, int offset, int c) {
+        int x = c + offset;
+        if (x >= _size) {
+            x -= _size;
+        }
+        x = table[x] - offset;
+        if (x < 0) {
+            x += _size;
+        }
+        return x;
+    }
+
+    /**
+     * Store into OUT the permutation performed, with no plugboard, by a
+     * machine whose slot k holds rotor #SLOTS[k] at offset OFFSETS[k].
+     */
+    void permutation(int[] slots, int[] offsets, int[] out) {
+        int n = slots.length;
+        for (int c = 0; c < _size; c += 1) {
+            int x = c;
+            for (int k = n - 1; k >= 0; k -= 1) {
+                x = through(_forward[slots[k]], offsets[k], x);
+            }
+            for (int k = 1; k < n; k += 1) {
+                x = through(_backward[slots[k]], offsets[k], x);
+            }
+            out[c] = x;
+        }
+    }
+
+    /**
+     * Alphabet size.
+     */
+    private final int _size;
+    /**
+     * Forward tables, by rotor.
+     */
+    private final int[][] _forward;
+    /**
+     * Backward tables, by rotor.
+     */
+    private final int[][] _backward;
+}
@@ -0,0 +1,243 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A generator of synthetic input files for Main, used to measure its
+ * throughput on large inputs.  Each section has a setting line with a
+ * random rotor order, random settings and ring settings and a random
+ * plugboard, followed by its message, in lines of words.
+ *
+ * @author taiga
+ */
+public final class Workload {
+
+    /**
+     * Write to ARGS[1] (or the standard output) a workload for the
+     * configuration named by ARGS[0].  Options: --sections=N (default
+     * 100); --length=N, the mean message length in characters (default
+     * 10000); --dist=fixed|uniform|exp, the distribution of message
+     * lengths (default exp); --plugs=N, the number of plugboard pairs
+     * (default 10); --alphabet=CHARS, the characters used in messages
+     * (default the whole alphabet); and --seed=N (default 0).
+     */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--sections=(\\d+) --length=(\\d+) "
+                                + "--dist=(fixed|uniform|exp) "
+                                + "--plugs=(\\d+) --alphabet=(.+) "
+                                + "--seed=(\\d+) --=(.*){1,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Workload [--sections=N] "
+                            + "[--length=N] [--dist=fixed|uniform|exp] "
+                            + "[--plugs=N] [--alphabet=CHARS] [--seed=N] "
+                            + "CONFIG [OUTPUT]");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.loadConfig(files.get(0));
+            Workload workload =
+                new Workload(machine,
+                             option(options, "--sections", DEFAULT_SECTIONS),
+                             option(options, "--length", DEFAULT_LENGTH),
+                             options.contains("--dist")
+                             ? options.getLast("--dist") : "exp",
+                             option(options, "--plugs", DEFAULT_PLUGS),
+                             options.contains("--alphabet")
+                             ? options.getLast("--alphabet") : null,
+                             option(options, "--seed", 0));
+            Writer out;
+            if (files.size() > 1) {
+                out = new OutputStreamWriter(
+                    new FileOutputStream(files.get(1)),
+                    StandardCharsets.ISO_8859_1);
+            } else {
+                out = new OutputStreamWriter(System.out,
+                                             StandardCharsets.ISO_8859_1);
+            }
+            try (Writer w = new BufferedWriter(out)) {
+                workload.write(w);
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return the value of integer option NAME in OPTIONS, or DEFLT.
+     */
+    private static int option(CommandArgs options, String name, int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        try {
+            return Integer.parseInt(options.getLast(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /**
+     * A workload for MACHINE of SECTIONS sections whose message lengths
+     * have mean LENGTH and distribution DIST ("fixed", "uniform" or
+     * "exp"), with PLUGS plugboard pairs, messages drawn from the
+     * characters LETTERS (null for the whole alphabet), and random
+     * choices seeded by SEED.
+     */
+    Workload(Machine machine, int sections, int length, String dist,
+             int plugs, String letters, long seed) {
+        _alphabet = machine.alphabet();
+        if (2 * plugs > _alphabet.size()) {
+            throw error("too many plugboard pairs");
+        }
+        if (letters == null) {
+            letters = "";
+            for (int c = 0; c < _alphabet.size(); c += 1) {
+                letters += _alphabet.toChar(c);
+            }
+        }
+        for (int i = 0; i < letters.length(); i += 1) {
+            if (!_alphabet.contains(letters.charAt(i))) {
+                throw error("%c is not in the alphabet", letters.charAt(i));
+            }
+        }
+        _keys = new KeySpace(machine, true);
+        _sections = sections;
+        _length = length;
+        _dist = dist;
+        _plugs = plugs;
+        _letters = letters;
+        _random = new Random(seed);
+    }
+
+    /**
+     * Write my sections to OUT.
+     */
+    void write(Writer out) throws IOException {
+        for (int s = 0; s < _sections; s += 1) {
+            long key = (long) (_random.nextDouble() * _keys.size());
+            out.write("* " + _keys.setting(key) + plugboard() + "\n");
+            int length = messageLength();
+            int column = 0;
+            for (int i = 0; i < length; i += 1) {
+                if (column >= LINE_LENGTH) {
+                    out.write('\n');
+                    column = 0;
+                } else if (column > 0 && _random.nextInt(WORD_LENGTH) == 0) {
+                    out.write(' ');
+                    column += 1;
+                }
+                out.write(_letters.charAt(_random.nextInt(_letters.length())));
+                column += 1;
+            }
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Return a random plugboard of _plugs pairs, as it appears at the end
+     * of a setting line.
+     */
+    private String plugboard() {
+        int size = _alphabet.size();
+        int[] chars = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            chars[c] = c;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 2 * _plugs; i += 1) {
+            int j = i + _random.nextInt(size - i);
+            int t = chars[i];
+            chars[i] = chars[j];
+            chars[j] = t;
+            if (i % 2 == 1) {
+                result.append(" (").append(_alphabet.toChar(chars[i - 1]))
+                    .append(_alphabet.toChar(chars[i])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return a random message length.
+     */
+    private int messageLength() {
+        switch (_dist) {
+        case "fixed":
+            return _length;
+        case "uniform":
+            return _random.nextInt(2 * _length + 1);
+        default:
+            return (int) (-_length * Math.log(1 - _random.nextDouble()));
+        }
+    }
+
+    /**
+     * Default number of sections.
+     */
+    private static final int DEFAULT_SECTIONS = 100;
+    /**
+     * Default mean message length.
+     */
+    private static final int DEFAULT_LENGTH = 10000;
+    /**
+     * Default number of plugboard pairs.
+     */
+    private static final int DEFAULT_PLUGS = 10;
+    /**
+     * Longest message line.
+     */
+    private static final int LINE_LENGTH = 72;
+    /**
+     * Mean word length in message lines.
+     */
+    private static final int WORD_LENGTH = 5;
+
+    /**
+     * Alphabet of the machine.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Keys from which setting lines are drawn.
+     */
+    private final KeySpace _keys;
+    /**
+     * # sections.
+     */
+    private final int _sections;
+    /**
+     * Mean message length.
+     */
+    private final int _length;
+    /**
+     * Message length distribution.
+     */
+    private final String _dist;
+    /**
+     * # plugboard pairs.
+     */
+    private final int _plugs;
+    /**
+     * Characters used in messages.
+     */
+    private final String _letters;
+    /**
+     * Source of random choices.
+     */
+    private final Random _random;
+}